@@ -0,0 +1,46 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    /**
+     * Share of the limit a request may take up when it arrives: a low priority request is
+     * rejected while more than half of the limit is in use, a high priority one only when all
+     * of it is.
+     */
+    public enum Priority {
+        HIGH(1.0), NORMAL(0.9), LOW(0.5);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+
+        public double getShare() {
+            return share;
+        }
+    }
+
+    private boolean enabled = true;
+    private int initialLimit = 20;
+    private int minLimit = 5;
+    private int maxLimit = 500;
+    private double backoffRatio = 0.9;
+    // latency above tolerance times the baseline counts as overload
+    private double tolerance = 2.0;
+    private int windowSize = 250;
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    // priority by route, either "METHOD pattern" or a path pattern alone for every method; the
+    // first matching route wins, other requests are NORMAL
+    private Map<String, Priority> routes = new LinkedHashMap<>();
+}
@@ -0,0 +1,140 @@
+package com.reactivespring.config;
+
+import com.reactivespring.config.ConcurrencyLimitProperties.Priority;
+import com.reactivespring.util.ConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load shedding in front of everything else: a request that would take the service past its
+ * adaptive {@link ConcurrencyLimit} is answered with 503 and Retry-After straight away, instead
+ * of queueing in Netty and Mongo and slowing down every request already admitted. Routes are
+ * given a priority so that cheap point lookups keep being served while scans and bulk
+ * operations are shed first. Streaming responses are always low priority, however their route
+ * is configured, since they hold a slot for as long as the client keeps reading.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitWebFilter implements WebFilter {
+
+    private ConcurrencyLimitProperties properties;
+    private ConcurrencyLimit concurrencyLimit;
+    private List<Route> routes = new ArrayList<>();
+    private Map<Priority, Counter> rejectedCounters = new EnumMap<>(Priority.class);
+
+    public ConcurrencyLimitWebFilter(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.concurrencyLimit = new ConcurrencyLimit(properties.getInitialLimit(), properties.getMinLimit(),
+                properties.getMaxLimit(), properties.getBackoffRatio(), properties.getTolerance(),
+                properties.getWindowSize());
+        properties.getRoutes().forEach((route, priority) -> routes.add(Route.parse(route, priority)));
+        for (var priority : Priority.values()) {
+            rejectedCounters.put(priority, Counter.builder("http.server.concurrency.rejected")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("http.server.concurrency.limit", concurrencyLimit, ConcurrencyLimit::getLimit)
+                .register(meterRegistry);
+        Gauge.builder("http.server.concurrency.inflight", concurrencyLimit, ConcurrencyLimit::getInFlight)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        var priority = priority(exchange.getRequest());
+        if (!concurrencyLimit.tryAcquire(priority.getShare())) {
+            rejectedCounters.get(priority).increment();
+            var response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(Math.max(1, properties.getRetryAfter().toSeconds())));
+            return response.setComplete();
+        }
+        // scans, bulk operations and streams take as long as their data does, sampling them
+        // next to point lookups would read as overload
+        var sampled = priority != Priority.LOW;
+        var start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signalType -> {
+                    if (!sampled || signalType == SignalType.CANCEL) {
+                        // a cancel only means the client went away, it says nothing about our load
+                        concurrencyLimit.releaseWithoutSample();
+                        return;
+                    }
+                    var status = exchange.getResponse().getStatusCode();
+                    var failed = signalType == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                    concurrencyLimit.release(System.nanoTime() - start, failed);
+                });
+    }
+
+    private static boolean isStreaming(ServerHttpRequest request) {
+        return request.getHeaders().getAccept().stream()
+                .anyMatch(mediaType -> mediaType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                        || mediaType.isCompatibleWith(MediaType.TEXT_EVENT_STREAM));
+    }
+
+    private Priority priority(ServerHttpRequest request) {
+        if (isStreaming(request)) {
+            return Priority.LOW;
+        }
+        var path = request.getPath().pathWithinApplication();
+        for (var route : routes) {
+            if ((route.method == null || route.method == request.getMethod()) && route.pattern.matches(path)) {
+                return route.priority;
+            }
+        }
+        return Priority.NORMAL;
+    }
+
+    private static class Route {
+        // null matches every method
+        private final HttpMethod method;
+        private final PathPattern pattern;
+        private final Priority priority;
+
+        private Route(HttpMethod method, PathPattern pattern, Priority priority) {
+            this.method = method;
+            this.pattern = pattern;
+            this.priority = priority;
+        }
+
+        // "GET /v1/movieinfos/{id}" or just "/v1/movieinfos/{id}"
+        static Route parse(String route, Priority priority) {
+            var parts = route.trim().split("\\s+", 2);
+            if (parts.length == 1) {
+                return new Route(null, PathPatternParser.defaultInstance.parse(parts[0]), priority);
+            }
+            var method = HttpMethod.resolve(parts[0].toUpperCase());
+            if (method == null) {
+                throw new IllegalArgumentException("Unknown HTTP method in concurrency limit route : " + route);
+            }
+            return new Route(method, PathPatternParser.defaultInstance.parse(parts[1]), priority);
+        }
+    }
+}
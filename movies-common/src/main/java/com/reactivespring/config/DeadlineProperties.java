@@ -0,0 +1,22 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "deadline")
+public class DeadlineProperties {
+
+    // budget of a request that did not send one
+    private Duration defaultTimeout = Duration.ofSeconds(5);
+
+    // upper bound for the budget a caller may ask for
+    private Duration maxTimeout = Duration.ofSeconds(30);
+
+    // default budget by path prefix, the longest matching prefix wins; 0 means no deadline
+    private Map<String, Duration> routes = new LinkedHashMap<>();
+}
@@ -0,0 +1,97 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Gives every request a deadline: the budget sent by the caller in {@link Deadline#HEADER}
+ * (capped at maxTimeout), otherwise the default for its route. The whole exchange is cancelled
+ * once the budget is used up, the same way it is when the client disconnects, and a 504 is sent
+ * if the response has not started yet. Streaming responses only get a deadline when the caller
+ * sent one.
+ */
+@Component
+// runs right after load shedding, so a rejected request never gets a deadline
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@EnableConfigurationProperties(DeadlineProperties.class)
+@Slf4j
+public class DeadlineWebFilter implements WebFilter {
+
+    private DeadlineProperties deadlineProperties;
+
+    public DeadlineWebFilter(DeadlineProperties deadlineProperties) {
+        this.deadlineProperties = deadlineProperties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var budget = budget(exchange.getRequest());
+        if (budget == null) {
+            return chain.filter(exchange);
+        }
+        if (budget.isZero() || budget.isNegative()) {
+            return deadlineExceeded(exchange);
+        }
+        var deadlineNanos = System.nanoTime() + budget.toNanos();
+        return chain.filter(exchange)
+                .timeout(budget, Mono.defer(() -> deadlineExceeded(exchange)))
+                .contextWrite(context -> Deadline.put(context, deadlineNanos));
+    }
+
+    // null when the request runs without a deadline
+    private Duration budget(ServerHttpRequest request) {
+        var header = request.getHeaders().getFirst(Deadline.HEADER);
+        if (header != null) {
+            try {
+                var requested = Duration.ofMillis(Long.parseLong(header.trim()));
+                return requested.compareTo(deadlineProperties.getMaxTimeout()) > 0
+                        ? deadlineProperties.getMaxTimeout() : requested;
+            } catch (NumberFormatException ex) {
+                log.info("Ignoring invalid {} header : {}", Deadline.HEADER, header);
+            }
+        }
+        if (isStreaming(request)) {
+            return null;
+        }
+        var path = request.getPath().pathWithinApplication().value();
+        var budget = deadlineProperties.getDefaultTimeout();
+        var matchedLength = -1;
+        for (var route : deadlineProperties.getRoutes().entrySet()) {
+            if (path.startsWith(route.getKey()) && route.getKey().length() > matchedLength) {
+                budget = route.getValue();
+                matchedLength = route.getKey().length();
+            }
+        }
+        return budget.isZero() ? null : budget;
+    }
+
+    private static boolean isStreaming(ServerHttpRequest request) {
+        return request.getHeaders().getAccept().stream()
+                .anyMatch(mediaType -> mediaType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                        || mediaType.isCompatibleWith(MediaType.TEXT_EVENT_STREAM));
+    }
+
+    private static Mono<Void> deadlineExceeded(ServerWebExchange exchange) {
+        var response = exchange.getResponse();
+        if (response.isCommitted()) {
+            // part of the body is already out, all that is left is to close the connection
+            return Mono.error(new DeadlineExceededException("Request deadline exceeded while writing the response"));
+        }
+        response.setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,11 @@
+package com.reactivespring.exception;
+
+public class DeadlineExceededException extends RuntimeException{
+
+    private String message;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
@@ -0,0 +1,114 @@
+package com.reactivespring.util;
+
+import java.util.Arrays;
+
+/**
+ * AIMD concurrency limit driven by latency. While at least half of the limit is in use every
+ * completed request raises the limit by 1/limit, so by about one per limit's worth of requests.
+ * <p>
+ * Overload is judged once per window of {@code windowSize} sampled requests: when the median
+ * latency of the window is above {@code tolerance} times the long-term baseline, or requests
+ * failed, and the limit was mostly in use throughout the window, the limit is multiplied by
+ * {@code backoffRatio}. A single slow request, or a slow window while the service is mostly
+ * idle, leaves the limit alone. The baseline is a slowly smoothed median of the windows that
+ * were not overloaded, so it follows the service as its data and hardware change without
+ * being dragged up by the overload it is meant to detect. Only requests of comparable cost
+ * should be sampled; scans, bulk operations and streams are released without a sample.
+ * <p>
+ * A request is admitted only while fewer than {@code share} of the limit are in flight, which
+ * keeps the rest of the limit free for requests of higher priority.
+ */
+public class ConcurrencyLimit {
+
+    // share of the limit that has to be in flight for it to count as in use
+    private static final double BUSY_UTILISATION = 0.8;
+    private static final double BASELINE_SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+
+    // guarded by this
+    private double limit;
+    private int inFlight;
+    private double baselineNanos;
+    private final long[] windowLatencies;
+    private int windowSamples;
+    private int windowBusySamples;
+    private int windowFailures;
+
+    public ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance,
+                            int windowSize) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.windowLatencies = new long[windowSize];
+    }
+
+    /**
+     * @return false when the request has to be rejected; otherwise it must be released
+     */
+    public synchronized boolean tryAcquire(double share) {
+        if (inFlight >= Math.max(1, (int) (limit * share))) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Releases a request whose latency says something about the load, e.g. not one the client
+     * gave up on or a stream whose length depends on the data.
+     */
+    public synchronized void release(long latencyNanos, boolean failed) {
+        var limitInUse = inFlight * 2 >= limit;
+        var busy = inFlight >= limit * BUSY_UTILISATION;
+        inFlight--;
+        if (limitInUse && !failed) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        windowLatencies[windowSamples++] = latencyNanos;
+        if (busy) {
+            windowBusySamples++;
+        }
+        if (failed) {
+            windowFailures++;
+        }
+        if (windowSamples == windowLatencies.length) {
+            endWindow();
+        }
+    }
+
+    public synchronized void releaseWithoutSample() {
+        inFlight--;
+    }
+
+    private void endWindow() {
+        Arrays.sort(windowLatencies);
+        var median = windowLatencies[windowLatencies.length / 2];
+        var slow = baselineNanos > 0 && median > baselineNanos * tolerance;
+        var mostlyBusy = windowBusySamples * 2 >= windowSamples;
+        if (mostlyBusy && (slow || windowFailures > 0)) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (baselineNanos == 0) {
+            baselineNanos = median;
+        } else {
+            // a slow window while the service is mostly idle is the new normal, not overload
+            baselineNanos += (median - baselineNanos) * BASELINE_SMOOTHING;
+        }
+        windowSamples = 0;
+        windowBusySamples = 0;
+        windowFailures = 0;
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,27 @@
+package com.reactivespring.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursors: the last returned _id, base64url encoded so clients do not start
+ * building cursors by hand.
+ */
+public final class CursorCodec {
+
+    private CursorCodec() {
+    }
+
+    public static String encode(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("cursor is not valid : " + cursor, ex);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The deadline of the request being served. DeadlineWebFilter keeps it in the Reactor context
+ * as a System.nanoTime() value; what is left of it is forwarded to downstream services by the
+ * WebClient, or becomes the maxTime of Mongo queries through {@link MongoDeadline}.
+ */
+public final class Deadline {
+
+    // remaining budget of the caller in milliseconds
+    public static final String HEADER = "X-Request-Budget-Ms";
+
+    private static final String CONTEXT_KEY = Deadline.class.getName();
+
+    private Deadline() {
+    }
+
+    public static Context put(Context context, long deadlineNanos) {
+        return context.put(CONTEXT_KEY, deadlineNanos);
+    }
+
+    public static Optional<Duration> remaining(ContextView context) {
+        return context.<Long>getOrEmpty(CONTEXT_KEY)
+                .map(deadlineNanos -> Duration.ofNanos(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * For a call that may be shared with other callers and so run within the deadline of
+     * whichever caller started it: when it runs out of time while this caller still has some
+     * left, it is subscribed once more, this time within this caller's own deadline.
+     */
+    public static <T> Mono<T> retryShared(Mono<T> call) {
+        return call.onErrorResume(DeadlineExceededException.class, ex -> Mono.deferContextual(context ->
+                remaining(context).map(remaining -> remaining.toMillis() >= 1).orElse(true)
+                        ? call : Mono.error(ex)));
+    }
+}
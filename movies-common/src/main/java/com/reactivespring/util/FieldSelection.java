@@ -0,0 +1,51 @@
+package com.reactivespring.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Parses the fields= parameter of the read endpoints into the property names of the
+ * document type, which the repository turns into a Mongo projection. The id is always
+ * returned by Mongo, so it does not need to be listed.
+ */
+public final class FieldSelection {
+
+    private FieldSelection() {
+    }
+
+    /**
+     * Returns the selected property names, or null when every field was asked for.
+     */
+    public static List<String> parse(String fields, Class<?> documentType) {
+        if (fields == null) {
+            return null;
+        }
+        var selected = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("fields must name at least one field");
+        }
+        var known = properties(documentType);
+        var unknown = selected.stream()
+                .filter(field -> !known.contains(field))
+                .collect(Collectors.joining(","));
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown fields : " + unknown);
+        }
+        return selected;
+    }
+
+    private static Set<String> properties(Class<?> documentType) {
+        return Arrays.stream(documentType.getDeclaredFields())
+                .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                .map(Field::getName)
+                .collect(Collectors.toSet());
+    }
+}
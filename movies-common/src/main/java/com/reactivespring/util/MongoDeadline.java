@@ -0,0 +1,31 @@
+package com.reactivespring.util;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import org.springframework.core.NestedExceptionUtils;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The request's {@link Deadline} as seen by Mongo queries: what is left of it becomes their
+ * maxTime, so Mongo stops working on a query once nobody is waiting for its result.
+ */
+public final class MongoDeadline {
+
+    private MongoDeadline() {
+    }
+
+    /**
+     * The remaining budget as a Mongo maxTime, at least 1ms since 0 means no limit to Mongo.
+     */
+    public static Optional<Duration> maxTime(ContextView context) {
+        return Deadline.remaining(context)
+                .map(remaining -> remaining.toMillis() < 1 ? Duration.ofMillis(1) : remaining);
+    }
+
+    // the error Mongo raises when a query runs past its maxTime
+    public static boolean isMaxTimeExceeded(Throwable ex) {
+        return NestedExceptionUtils.getMostSpecificCause(ex) instanceof MongoExecutionTimeoutException;
+    }
+}
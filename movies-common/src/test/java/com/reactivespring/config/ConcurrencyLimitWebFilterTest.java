@@ -0,0 +1,153 @@
+package com.reactivespring.config;
+
+import com.reactivespring.config.ConcurrencyLimitProperties.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConcurrencyLimitWebFilterTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // requests that stay in flight until they are disposed
+    WebFilterChain pending = exchange -> Mono.never();
+
+    ConcurrencyLimitWebFilter concurrencyLimitWebFilter(boolean enabled) {
+        var properties = new ConcurrencyLimitProperties();
+        properties.setEnabled(enabled);
+        properties.setInitialLimit(2);
+        properties.setMinLimit(1);
+        properties.getRoutes().put("/v1/movies/bulk", Priority.LOW);
+        properties.getRoutes().put("GET /v1/movies/{id}", Priority.HIGH);
+        properties.getRoutes().put("DELETE /v1/movies/{id}", Priority.LOW);
+        return new ConcurrencyLimitWebFilter(properties, meterRegistry);
+    }
+
+    static MockServerWebExchange exchange(String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+    }
+
+    double inFlight() {
+        return meterRegistry.get("http.server.concurrency.inflight").gauge().value();
+    }
+
+    double rejected(String priority) {
+        return meterRegistry.get("http.server.concurrency.rejected").tag("priority", priority).counter().count();
+    }
+
+    @Test
+    void requestOverTheLimitIsRejectedWith503() {
+
+        var filter = concurrencyLimitWebFilter(true);
+        var first = filter.filter(exchange("/v1/movies/1"), pending).subscribe();
+        var second = filter.filter(exchange("/v1/movies/2"), pending).subscribe();
+
+        var rejected = exchange("/v1/movies/3");
+        StepVerifier.create(filter.filter(rejected, pending))
+                .verifyComplete();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getResponse().getStatusCode());
+        assertEquals("1", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1.0, rejected("high"));
+
+        first.dispose();
+        second.dispose();
+        assertEquals(0.0, inFlight());
+    }
+
+    @Test
+    void lowPriorityIsShedWhileHighPriorityIsAdmitted() {
+
+        var filter = concurrencyLimitWebFilter(true);
+        var first = filter.filter(exchange("/v1/movies/1"), pending).subscribe();
+
+        var low = exchange("/v1/movies/bulk");
+        StepVerifier.create(filter.filter(low, pending))
+                .verifyComplete();
+        var high = filter.filter(exchange("/v1/movies/2"), pending).subscribe();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, low.getResponse().getStatusCode());
+        assertEquals(1.0, rejected("low"));
+        assertEquals(2.0, inFlight());
+
+        first.dispose();
+        high.dispose();
+    }
+
+    @Test
+    void priorityDependsOnTheMethod() {
+
+        var filter = concurrencyLimitWebFilter(true);
+        var first = filter.filter(exchange("/v1/movies/1"), pending).subscribe();
+
+        var delete = MockServerWebExchange.from(MockServerHttpRequest.delete("/v1/movies/2").build());
+        StepVerifier.create(filter.filter(delete, pending))
+                .verifyComplete();
+        var stream = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/movies/2")
+                .accept(MediaType.APPLICATION_NDJSON).build());
+        StepVerifier.create(filter.filter(stream, pending))
+                .verifyComplete();
+        var get = filter.filter(exchange("/v1/movies/2"), pending).subscribe();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, delete.getResponse().getStatusCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, stream.getResponse().getStatusCode());
+        assertEquals(2.0, rejected("low"));
+        assertEquals(2.0, inFlight());
+
+        first.dispose();
+        get.dispose();
+    }
+
+    @Test
+    void routesBindFromProperties() {
+
+        var properties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "concurrency-limit.routes[GET /v1/movies/{id}]", "high",
+                "concurrency-limit.routes[/actuator/**]", "high")))
+                .bind("concurrency-limit", ConcurrencyLimitProperties.class)
+                .get();
+
+        assertEquals(Map.of("GET /v1/movies/{id}", Priority.HIGH, "/actuator/**", Priority.HIGH), properties.getRoutes());
+    }
+
+    @Test
+    void completedRequestIsReleased() {
+
+        var filter = concurrencyLimitWebFilter(true);
+        var exchange = exchange("/v1/movies/1");
+
+        StepVerifier.create(filter.filter(exchange, ex -> Mono.empty()))
+                .verifyComplete();
+
+        assertNull(exchange.getResponse().getStatusCode());
+        assertEquals(0.0, inFlight());
+    }
+
+    @Test
+    void disabledFilterAdmitsEverything() {
+
+        var filter = concurrencyLimitWebFilter(false);
+        filter.filter(exchange("/v1/movies/1"), pending).subscribe();
+        filter.filter(exchange("/v1/movies/2"), pending).subscribe();
+
+        var third = exchange("/v1/movies/3");
+        filter.filter(third, pending).subscribe();
+
+        assertNull(third.getResponse().getStatusCode());
+        assertEquals(0.0, inFlight());
+    }
+}
@@ -0,0 +1,99 @@
+package com.reactivespring.config;
+
+import com.reactivespring.util.Deadline;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadlineWebFilterTest {
+
+    AtomicReference<Optional<Duration>> remaining = new AtomicReference<>();
+
+    // records the budget left when the request reaches the handler
+    WebFilterChain chain = exchange -> Mono.deferContextual(context -> {
+        remaining.set(Deadline.remaining(context));
+        return Mono.empty();
+    });
+
+    DeadlineWebFilter deadlineWebFilter() {
+        var properties = new DeadlineProperties();
+        properties.setDefaultTimeout(Duration.ofSeconds(3));
+        properties.setMaxTimeout(Duration.ofSeconds(10));
+        properties.getRoutes().put("/v1/movies/bulk", Duration.ZERO);
+        properties.getRoutes().put("/v1/movies/slow", Duration.ofSeconds(8));
+        return new DeadlineWebFilter(properties);
+    }
+
+    Optional<Duration> budgetOf(MockServerHttpRequest request) {
+        StepVerifier.create(deadlineWebFilter().filter(MockServerWebExchange.from(request), chain))
+                .verifyComplete();
+        return remaining.get();
+    }
+
+    static void assertAbout(Duration expected, Optional<Duration> actual) {
+        assertTrue(actual.isPresent());
+        assertTrue(actual.get().compareTo(expected) <= 0 && actual.get().compareTo(expected.minusSeconds(1)) > 0,
+                () -> "expected about " + expected + " but was " + actual.get());
+    }
+
+    @Test
+    void callerBudgetIsCappedAtMaxTimeout() {
+
+        assertAbout(Duration.ofSeconds(2), budgetOf(MockServerHttpRequest.get("/v1/movies/1")
+                .header(Deadline.HEADER, "2000").build()));
+        assertAbout(Duration.ofSeconds(10), budgetOf(MockServerHttpRequest.get("/v1/movies/1")
+                .header(Deadline.HEADER, "60000").build()));
+    }
+
+    @Test
+    void longestMatchingRouteSetsTheDefault() {
+
+        assertAbout(Duration.ofSeconds(3), budgetOf(MockServerHttpRequest.get("/v1/movies/1").build()));
+        assertAbout(Duration.ofSeconds(8), budgetOf(MockServerHttpRequest.get("/v1/movies/slow/1").build()));
+        assertEquals(Optional.empty(), budgetOf(MockServerHttpRequest.post("/v1/movies/bulk").build()));
+    }
+
+    @Test
+    void streamWithoutCallerBudgetHasNoDeadline() {
+
+        assertEquals(Optional.empty(), budgetOf(MockServerHttpRequest.get("/v1/movies/stream")
+                .accept(MediaType.APPLICATION_NDJSON).build()));
+    }
+
+    @Test
+    void exhaustedBudgetIsAnsweredWith504() {
+
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/movies/1")
+                .header(Deadline.HEADER, "0").build());
+
+        StepVerifier.create(deadlineWebFilter().filter(exchange, chain))
+                .verifyComplete();
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, exchange.getResponse().getStatusCode());
+        assertEquals(null, remaining.get());
+    }
+
+    @Test
+    void slowHandlerIsCancelledAtTheDeadline() {
+
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/movies/1")
+                .header(Deadline.HEADER, "50").build());
+
+        StepVerifier.create(deadlineWebFilter().filter(exchange, ex -> Mono.never()))
+                .verifyComplete();
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, exchange.getResponse().getStatusCode());
+    }
+}
@@ -0,0 +1,121 @@
+package com.reactivespring.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitTest {
+
+    static final long FAST = Duration.ofMillis(10).toNanos();
+
+    ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(10, 2, 100, 0.5, 2.0, 10);
+
+    // takes up the whole limit
+    void fill() {
+        while (concurrencyLimit.tryAcquire(1.0)) {
+        }
+    }
+
+    // completes one request and lets the next one in, so the limit stays in use
+    void cycle(long latencyNanos, boolean failed) {
+        concurrencyLimit.release(latencyNanos, failed);
+        concurrencyLimit.tryAcquire(1.0);
+    }
+
+    @Test
+    void lowPriorityIsShedBeforeHighPriority() {
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(concurrencyLimit.tryAcquire(0.5));
+        }
+        assertFalse(concurrencyLimit.tryAcquire(0.5));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(concurrencyLimit.tryAcquire(1.0));
+        }
+        assertFalse(concurrencyLimit.tryAcquire(1.0));
+        assertEquals(10, concurrencyLimit.getInFlight());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyStaysAtBaseline() {
+
+        for (int i = 0; i < 5; i++) {
+            concurrencyLimit.tryAcquire(1.0);
+        }
+        for (int i = 0; i < 50; i++) {
+            cycle(FAST, false);
+        }
+
+        assertTrue(concurrencyLimit.getLimit() > 10);
+    }
+
+    @Test
+    void mixedFastAndSlowLatenciesKeepTheLimit() {
+
+        // cache hits next to one slow lookup in three, as under ordinary mixed traffic
+        fill();
+        for (int i = 0; i < 500; i++) {
+            cycle(i % 3 == 0 ? FAST * 50 : FAST / 100, false);
+        }
+
+        assertTrue(concurrencyLimit.getLimit() >= 10);
+    }
+
+    @Test
+    void sustainedSlowdownWhileBusyBacksOffOncePerWindow() {
+
+        fill();
+        for (int i = 0; i < 10; i++) {
+            cycle(FAST, false);
+        }
+        var limit = concurrencyLimit.getLimit();
+
+        for (int i = 0; i < 10; i++) {
+            cycle(FAST * 3, false);
+        }
+
+        assertTrue(concurrencyLimit.getLimit() >= limit * 0.5);
+        assertTrue(concurrencyLimit.getLimit() <= (limit + 1) * 0.5);
+    }
+
+    @Test
+    void slowWindowWhileMostlyIdleDoesNotBackOff() {
+
+        concurrencyLimit.tryAcquire(1.0);
+        for (int i = 0; i < 10; i++) {
+            cycle(FAST, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            cycle(FAST * 3, true);
+        }
+
+        assertEquals(10, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void failuresWhileBusyBackOff() {
+
+        fill();
+        for (int i = 0; i < 9; i++) {
+            cycle(FAST, false);
+        }
+        var limit = concurrencyLimit.getLimit();
+        cycle(FAST, true);
+
+        assertEquals(limit * 0.5, concurrencyLimit.getLimit());
+    }
+
+    @Test
+    void cancelledRequestsDoNotMoveTheLimit() {
+
+        concurrencyLimit.tryAcquire(1.0);
+        concurrencyLimit.releaseWithoutSample();
+
+        assertEquals(10, concurrencyLimit.getLimit());
+        assertEquals(0, concurrencyLimit.getInFlight());
+    }
+}
@@ -0,0 +1,58 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * Creates the indexes the movie info queries rely on. ensureIndex is a no-op for indexes
+ * that already exist, so this is safe on every start.
+ */
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    /**
+     * Case-insensitive comparison, shared by the name_ci index and the queries that use it:
+     * a query only uses an index built with the same collation.
+     */
+    public static final Collation NAME_CASE_INSENSITIVE = Collation.of("en").strength(Collation.ComparisonLevel.secondary());
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        var movieInfoIndexes = reactiveMongoTemplate.indexOps(MovieInfo.class);
+        Flux.concat(
+                        // year range queries, returned in (year, name) order
+                        movieInfoIndexes.ensureIndex(new Index()
+                                .on("year", Sort.Direction.ASC)
+                                .on("name", Sort.Direction.ASC)
+                                .named("year_name")),
+                        // multikey: one entry per cast member
+                        movieInfoIndexes.ensureIndex(new Index()
+                                .on("cast", Sort.Direction.ASC)
+                                .named("cast")),
+                        movieInfoIndexes.ensureIndex(new Index()
+                                .on("name", Sort.Direction.ASC)
+                                .named("name")),
+                        movieInfoIndexes.ensureIndex(new Index()
+                                .on("name", Sort.Direction.ASC)
+                                .named("name_ci")
+                                .collation(NAME_CASE_INSENSITIVE)))
+                .doOnNext(index -> log.info("Ensured index : {}", index))
+                .doOnError(ex -> log.error("Index creation failed : {}", ex.getMessage(), ex))
+                .subscribe();
+    }
+}
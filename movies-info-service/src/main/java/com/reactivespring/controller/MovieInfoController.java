@@ -1,17 +1,23 @@
 package com.reactivespring.controller;
 
 
+import com.reactivespring.domain.BulkItemResult;
+import com.reactivespring.domain.CursorPage;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoFacets;
+import com.reactivespring.domain.MovieInfoSuggestion;
 
 import com.reactivespring.service.MovieInfoService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.util.List;
 
 @RestController
 @Slf4j
@@ -27,28 +33,88 @@ public class MovieInfoController {
 @PostMapping("/movieinfos")
 @ResponseStatus(HttpStatus.CREATED)
 public Mono<MovieInfo> addMovieInfo(@Valid @RequestBody MovieInfo movieInfo){
-System.out.println(movieInfo);
-        return movieInfoService.addMovieInfo(movieInfo).log();
+        return movieInfoService.addMovieInfo(movieInfo);
 
 }
 
 
-@GetMapping("/movieinfos")
+@PostMapping(value = "/movieinfos/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+public Flux<BulkItemResult> bulkAddMovieInfo(@RequestBody Flux<MovieInfo> movieInfos){
+        return movieInfoService.bulkAddMovieInfo(movieInfos);
+}
+
+@GetMapping(value = "/movieinfos", params = {"!limit", "!cursor"})
 @ResponseStatus(HttpStatus.FOUND)
-    public Flux<MovieInfo> getAllMovieInfo(){
-        return movieInfoService.getAllMovieInfo().log();
+    public Flux<MovieInfo> getAllMovieInfo(@RequestParam(required = false) String fields){
+        return movieInfoService.getAllMovieInfo(fields);
+
+}
+
+@GetMapping(value = "/movieinfos", params = {"!limit", "!cursor"},
+        produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+public Flux<MovieInfo> streamAllMovieInfo(@RequestParam(required = false) String fields){
+        return movieInfoService.streamAllMovieInfo(fields);
+}
+
+@GetMapping("/movieinfos")
+public Mono<CursorPage<MovieInfo>> getMovieInfoPage(@RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    @RequestParam(required = false) String fields){
+        return movieInfoService.getMovieInfoPage(cursor, limit, fields);
+}
+
+@GetMapping("/movieinfos/batch")
+public Flux<MovieInfo> getMovieInfoByIds(@RequestParam List<String> ids,
+                                         @RequestParam(required = false) String fields){
+        return movieInfoService.getMovieInfoByIds(ids, fields);
+}
+
+@GetMapping("/movieinfos/search")
+public Flux<MovieInfo> searchMovieInfo(@RequestParam(required = false) String name,
+                                       @RequestParam(defaultValue = "false") boolean ignoreCase,
+                                       @RequestParam(required = false) Integer fromYear,
+                                       @RequestParam(required = false) Integer toYear,
+                                       @RequestParam(required = false) String cast){
+        return movieInfoService.searchMovieInfo(name, ignoreCase, fromYear, toYear, cast);
+}
+
+@GetMapping("/movieinfos/suggest")
+public Flux<MovieInfoSuggestion> suggestMovieInfo(@RequestParam String prefix,
+                                                  @RequestParam(required = false) Integer limit){
+        return movieInfoService.suggestMovieInfo(prefix, limit);
+}
 
+@GetMapping("/movieinfos/facets")
+public Mono<MovieInfoFacets> getMovieInfoFacets(@RequestParam(required = false) Integer fromYear,
+                                                @RequestParam(required = false) Integer toYear,
+                                                @RequestParam(required = false) Integer castLimit){
+        return movieInfoService.getMovieInfoFacets(fromYear, toYear, castLimit);
+}
+
+@PostMapping("/movieinfos/facets/rebuild")
+@ResponseStatus(HttpStatus.NO_CONTENT)
+public Mono<Void> rebuildMovieInfoFacets(){
+        return movieInfoService.rebuildMovieInfoFacets();
 }
 
 @GetMapping("/movieinfos/{id}")
 @ResponseStatus(HttpStatus.FOUND)
-public Mono<ResponseEntity<MovieInfo>> getByIdMovieInfo(@PathVariable String id){
+public Mono<ResponseEntity<?>> getByIdMovieInfo(@PathVariable String id,
+                                                @RequestParam(required = false) String fields){
         //return movieInfoService.getByIdMovieInfo(id);
-    return movieInfoService.getByIdMovieInfo(id)
-            .map(movieInfo1 -> ResponseEntity.ok()
+    // with an ETag on the entity WebFlux answers a matching If-None-Match with 304 and no body
+    if (fields == null) {
+        // the full document is written from the cached JSON bytes, no Mongo read or encode
+        return movieInfoService.getEncodedMovieInfo(id)
+                .<ResponseEntity<?>>map(encoded -> withVersion(encoded.getVersion())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(encoded.getJson()))
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+    return movieInfoService.getByIdMovieInfo(id, fields)
+            .<ResponseEntity<?>>map(movieInfo1 -> withVersion(movieInfo1.getVersion())
                     .body(movieInfo1))
-            .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
-            .log();
+            .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
 
 
 }
@@ -65,12 +131,28 @@ public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@PathVariable String id
             .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
 }
 
+@PatchMapping("/movieinfos/{id}")
+public Mono<ResponseEntity<MovieInfo>> patchMovieInfo(@PathVariable String id
+        , @RequestBody MovieInfo movieInfoPatch){
+
+    return movieInfoService.patchMovieInfo(id, movieInfoPatch)
+            .map(movieInfo1 -> ResponseEntity.ok().body(movieInfo1))
+            .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+}
+
 @DeleteMapping("/movieinfos/{id}")
 @ResponseStatus(HttpStatus.OK)
 public  Mono<Void> deleteByIdMovieInfo(@PathVariable String id){
 
-        return movieInfoService.deleteByIdMovieInfo(id).log();
+        return movieInfoService.deleteByIdMovieInfo(id);
 }
 
 
+private static ResponseEntity.BodyBuilder withVersion(Long version) {
+    var response = ResponseEntity.ok();
+    if (version != null) {
+        response.eTag(String.valueOf(version));
+    }
+    return response;
+}
 }
@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkItemResult {
+
+    public enum Status {CREATED, INVALID, FAILED}
+
+    // position of the item in the request body
+    private long index;
+    private Status status;
+    private String movieInfoId;
+    private String message;
+}
@@ -0,0 +1,17 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A MovieInfo already encoded to the JSON the API returns, with the version that goes into
+ * its ETag.
+ */
+@Data
+@AllArgsConstructor
+public class EncodedMovieInfo {
+
+    private String movieInfoId;
+    private byte[] json;
+    private Long version;
+}
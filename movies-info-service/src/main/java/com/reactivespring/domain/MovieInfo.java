@@ -1,10 +1,12 @@
 package com.reactivespring.domain;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -18,6 +20,8 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// fields left out by a fields= projection are omitted rather than sent as null
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MovieInfo {
 
     @Id
@@ -36,4 +40,12 @@ public class MovieInfo {
     private List<@NotBlank(message = "movieInfo.cast must be present") String> cast;
 
     private LocalDate release_date;
+
+    // incremented on every write, exposed as the ETag of GET /v1/movieinfos/{id}
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 }
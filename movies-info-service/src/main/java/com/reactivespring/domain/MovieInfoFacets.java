@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoFacets {
+
+    // titles per year, ascending by year
+    private Map<Integer, Long> years;
+
+    // titles per cast member, most frequent first
+    private Map<String, Long> cast;
+}
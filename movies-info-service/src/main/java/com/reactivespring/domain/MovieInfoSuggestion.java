@@ -0,0 +1,15 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoSuggestion {
+
+    private String movieInfoId;
+    private String name;
+    private Integer year;
+}
@@ -1,5 +1,8 @@
 package com.reactivespring.exceptionhandler;
 
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MovieInfoConflictException;
+import com.reactivespring.exception.MovieInfoDataException;
 import com.reactivespring.exception.MovieInfoNotfoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
@@ -32,5 +35,22 @@ public class GlobalErrorHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    @ExceptionHandler(MovieInfoDataException.class)
+    public ResponseEntity<String> handleMovieInfoDataException(MovieInfoDataException ex){
+        log.error("Exception caught in handleMovieInfoDataException :  {} " ,ex.getMessage(),  ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(MovieInfoConflictException.class)
+    public ResponseEntity<String> handleMovieInfoConflictException(MovieInfoConflictException ex){
+        log.error("Exception caught in handleMovieInfoConflictException :  {} " ,ex.getMessage(),  ex);
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<String> handleDeadlineExceededException(DeadlineExceededException ex){
+        log.error("Exception caught in handleDeadlineExceededException :  {} " ,ex.getMessage(),  ex);
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(ex.getMessage());
+    }
 
 }
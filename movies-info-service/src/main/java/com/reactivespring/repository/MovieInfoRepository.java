@@ -2,8 +2,7 @@ package com.reactivespring.repository;
 
 import com.reactivespring.domain.MovieInfo;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
-import reactor.core.publisher.Mono;
-
-public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo,String> {
 
+// the search queries live in MovieInfoRepositoryCustom, so they run within the request's deadline
+public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo,String>, MovieInfoRepositoryCustom {
 }
@@ -0,0 +1,57 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+public interface MovieInfoRepositoryCustom {
+
+    // fields: property names to read, null for the whole document
+
+    Flux<MovieInfo> streamAll(int batchSize, List<String> fields);
+
+    Flux<MovieInfo> findPage(String afterId, int limit, List<String> fields);
+
+    Flux<MovieInfo> findByIds(List<String> ids, List<String> fields);
+
+    Flux<MovieInfo> findByName(String name);
+
+    // same collation as the name_ci index, see MongoIndexInitializer
+    Flux<MovieInfo> findByNameCaseInsensitive(String name);
+
+    Flux<MovieInfo> findByYearBetween(Range<Integer> years, Sort sort);
+
+    Flux<MovieInfo> findByCast(String cast);
+
+    /**
+     * Inserts the batch with one unordered insertMany, assigning ids to documents without one.
+     * Returns the error message for every position of the batch that was not written.
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<MovieInfo> movieInfos);
+
+    /**
+     * Sets the given fields (keyed by property name) with one findAndModify and returns the
+     * document as it was before the update, or empty when there is no MovieInfo with that id.
+     */
+    Mono<MovieInfo> updateFields(String id, Map<String, Object> fields);
+
+    /**
+     * Removes the MovieInfo and returns it, or empty when there is no MovieInfo with that id.
+     */
+    Mono<MovieInfo> findAndRemoveById(String id);
+
+    /**
+     * Number of titles per year, computed with an aggregation.
+     */
+    Mono<Map<Integer, Long>> countByYear();
+
+    /**
+     * Number of titles per year and cast member, computed with an aggregation.
+     */
+    Mono<Map<Integer, Map<String, Long>>> countByYearAndCast();
+}
@@ -0,0 +1,182 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.config.MongoIndexInitializer;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.MongoDeadline;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class MovieInfoRepositoryCustomImpl implements MovieInfoRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> streamAll(int batchSize, List<String> fields) {
+        var query = new Query().cursorBatchSize(batchSize);
+        return find(project(query, fields));
+    }
+
+    @Override
+    public Flux<MovieInfo> findPage(String afterId, int limit, List<String> fields) {
+        // keyset over _id: the (_id > last) range seek costs the same on every page,
+        // unlike skip which walks over everything before the requested offset
+        var query = new Query()
+                .with(Sort.by(Sort.Direction.ASC, "movieInfoId"))
+                .limit(limit);
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("movieInfoId").gt(afterId));
+        }
+        return find(project(query, fields));
+    }
+
+    @Override
+    public Flux<MovieInfo> findByIds(List<String> ids, List<String> fields) {
+        var query = Query.query(Criteria.where("movieInfoId").in(ids));
+        return find(project(query, fields));
+    }
+
+    @Override
+    public Flux<MovieInfo> findByName(String name) {
+        return find(Query.query(Criteria.where("name").is(name)));
+    }
+
+    @Override
+    public Flux<MovieInfo> findByNameCaseInsensitive(String name) {
+        var query = Query.query(Criteria.where("name").is(name))
+                .collation(MongoIndexInitializer.NAME_CASE_INSENSITIVE);
+        return find(query);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByYearBetween(Range<Integer> years, Sort sort) {
+        var lower = years.getLowerBound();
+        var upper = years.getUpperBound();
+        if (!lower.isBounded() && !upper.isBounded()) {
+            return find(new Query().with(sort));
+        }
+        var criteria = Criteria.where("year");
+        lower.getValue().ifPresent(year -> {
+            if (lower.isInclusive()) {
+                criteria.gte(year);
+            } else {
+                criteria.gt(year);
+            }
+        });
+        upper.getValue().ifPresent(year -> {
+            if (upper.isInclusive()) {
+                criteria.lte(year);
+            } else {
+                criteria.lt(year);
+            }
+        });
+        return find(Query.query(criteria).with(sort));
+    }
+
+    @Override
+    public Flux<MovieInfo> findByCast(String cast) {
+        return find(Query.query(Criteria.where("cast").is(cast)));
+    }
+
+    // the remaining budget of the request becomes the maxTime of the query, so Mongo stops
+    // working on a query once nobody is waiting for its result
+    private Flux<MovieInfo> find(Query query) {
+        return Flux.deferContextual(context -> {
+            MongoDeadline.maxTime(context).ifPresent(query::maxTime);
+            return reactiveMongoTemplate.find(query, MovieInfo.class);
+        }).onErrorMap(MongoDeadline::isMaxTimeExceeded,
+                ex -> new DeadlineExceededException("MovieInfo query ran out of time : " + ex.getMessage()));
+    }
+
+    // excluded fields are neither read from disk nor sent over the wire by Mongo; the version
+    // is always read because the ETag is derived from it
+    private static Query project(Query query, List<String> fields) {
+        if (fields != null) {
+            fields.forEach(field -> query.fields().include(field));
+            query.fields().include("version");
+        }
+        return query;
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<MovieInfo> movieInfos) {
+        var documents = new ArrayList<Document>(movieInfos.size());
+        for (var movieInfo : movieInfos) {
+            if (movieInfo.getMovieInfoId() == null) {
+                movieInfo.setMovieInfoId(new ObjectId().toHexString());
+            }
+            movieInfo.setVersion(0L);
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(movieInfo, document);
+            documents.add(document);
+        }
+
+        // unordered: one bad document (e.g. a duplicate id) does not stop the rest of the batch
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, String>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(error -> error.getIndex(), error -> error.getMessage()))));
+    }
+
+    @Override
+    public Mono<MovieInfo> updateFields(String id, Map<String, Object> fields) {
+        // the previous version tells the caller what the write changed, e.g. for the facet counts
+        var update = new Update().inc("version", 1);
+        fields.forEach(update::set);
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("movieInfoId").is(id)), update,
+                FindAndModifyOptions.options().returnNew(false), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<MovieInfo> findAndRemoveById(String id) {
+        return reactiveMongoTemplate.findAndRemove(Query.query(Criteria.where("movieInfoId").is(id)), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<Map<Integer, Long>> countByYear() {
+        var aggregation = Aggregation.newAggregation(MovieInfo.class,
+                Aggregation.match(Criteria.where("year").ne(null)),
+                Aggregation.group("year").count().as("count"));
+        return reactiveMongoTemplate.aggregate(aggregation, Document.class)
+                .collectMap(document -> document.getInteger("_id"), document -> document.get("count", Number.class).longValue());
+    }
+
+    @Override
+    public Mono<Map<Integer, Map<String, Long>>> countByYearAndCast() {
+        var aggregation = Aggregation.newAggregation(MovieInfo.class,
+                Aggregation.match(Criteria.where("year").ne(null)),
+                Aggregation.unwind("cast"),
+                // a cast member listed twice on one title still counts that title once
+                Aggregation.group("year", "cast", "movieInfoId"),
+                Aggregation.group("year", "cast").count().as("count"));
+        return reactiveMongoTemplate.aggregate(aggregation, Document.class)
+                .collect(HashMap::new, (counts, document) -> {
+                    var id = document.get("_id", Document.class);
+                    counts.computeIfAbsent(id.getInteger("year"), year -> new HashMap<>())
+                            .put(id.getString("cast"), document.get("count", Number.class).longValue());
+                });
+    }
+}
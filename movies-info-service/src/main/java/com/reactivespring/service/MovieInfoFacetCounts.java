@@ -0,0 +1,239 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoFacets;
+import com.reactivespring.repository.MovieInfoRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Precomputed facet histogram: titles per year and per (year, cast member), so the facets
+ * endpoint never scans the collection. MovieInfoService applies every write as a delta from
+ * the (year, cast) the document had before the write, which the write itself returns, to the
+ * one it has after. The cast counts over all years are also kept ranked, so the unfiltered
+ * facets read only the top entries.
+ * <p>
+ * Writes made through another instance are not seen here; {@link #rebuild()} recomputes both
+ * histograms with aggregations in Mongo and swaps them in together. A title written while the
+ * aggregations read it may be off by one until the next rebuild, since the aggregations may
+ * already have seen the write that is replayed on top.
+ */
+@Component
+@Slf4j
+public class MovieInfoFacetCounts {
+
+    @AllArgsConstructor
+    private static class Snapshot {
+        private final Integer year;
+        private final List<String> cast;
+    }
+
+    // a write as a delta: null stands for a title that does not exist
+    @AllArgsConstructor
+    private static class Change {
+        private final Snapshot previous;
+        private final Snapshot current;
+    }
+
+    @AllArgsConstructor
+    private static class CastCount {
+        private final String cast;
+        private final long count;
+    }
+
+    // most frequent first, then alphabetical; unique per cast member since the name is part of it
+    private static final Comparator<CastCount> RANKING = Comparator.<CastCount>comparingLong(castCount -> castCount.count)
+            .reversed()
+            .thenComparing(castCount -> castCount.cast);
+
+    /**
+     * The histograms, always replaced together.
+     */
+    private static class Counts {
+        private final ConcurrentNavigableMap<Integer, Long> yearCounts = new ConcurrentSkipListMap<>();
+        private final ConcurrentNavigableMap<Integer, ConcurrentMap<String, Long>> castCountsByYear = new ConcurrentSkipListMap<>();
+        private final ConcurrentMap<String, Long> castCounts = new ConcurrentHashMap<>();
+        private final NavigableSet<CastCount> rankedCast = new ConcurrentSkipListSet<>(RANKING);
+
+        void apply(Change change) {
+            apply(change.previous, -1);
+            apply(change.current, 1);
+        }
+
+        private void apply(Snapshot snapshot, long delta) {
+            if (snapshot == null || snapshot.year == null) {
+                return;
+            }
+            increment(yearCounts, snapshot.year, delta);
+            var yearCastCounts = castCountsByYear.computeIfAbsent(snapshot.year, year -> new ConcurrentHashMap<>());
+            snapshot.cast.stream()
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .forEach(cast -> {
+                        increment(yearCastCounts, cast, delta);
+                        incrementRanked(cast, delta);
+                    });
+        }
+
+        private void incrementRanked(String cast, long delta) {
+            var previous = castCounts.getOrDefault(cast, 0L);
+            var updated = increment(castCounts, cast, delta);
+            rankedCast.remove(new CastCount(cast, previous));
+            if (updated > 0) {
+                rankedCast.add(new CastCount(cast, updated));
+            }
+        }
+    }
+
+    private MovieInfoRepository movieInfoRepository;
+
+    // written under the lock of this, read without it
+    private volatile Counts counts = new Counts();
+
+    // writes made while a rebuild is aggregating, guarded by this; each rebuild replays its own
+    // on top of the aggregated counts
+    private final List<Map<String, Change>> writesDuringRebuilds = new ArrayList<>();
+
+    public MovieInfoFacetCounts(MovieInfoRepository movieInfoRepository) {
+        this.movieInfoRepository = movieInfoRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild().subscribe(unused -> {
+        }, ex -> log.error("Facet counts load failed : {}", ex.getMessage(), ex));
+    }
+
+    /**
+     * @param previous the document before the write, null for a new one
+     * @param current  the document after the write, null for a removed one
+     */
+    public void update(MovieInfo previous, MovieInfo current) {
+        var movieInfoId = current != null ? current.getMovieInfoId() : previous != null ? previous.getMovieInfoId() : null;
+        if (movieInfoId == null) {
+            return;
+        }
+        write(movieInfoId, new Change(snapshot(previous), snapshot(current)));
+    }
+
+    public void add(MovieInfo movieInfo) {
+        update(null, movieInfo);
+    }
+
+    public void remove(MovieInfo previous) {
+        update(previous, null);
+    }
+
+    private synchronized void write(String movieInfoId, Change change) {
+        counts.apply(change);
+        // several writes to one title collapse into one change from the first previous state
+        writesDuringRebuilds.forEach(writes -> writes.merge(movieInfoId, change,
+                (first, latest) -> new Change(first.previous, latest.current)));
+    }
+
+    private static Snapshot snapshot(MovieInfo movieInfo) {
+        if (movieInfo == null) {
+            return null;
+        }
+        return new Snapshot(movieInfo.getYear(), movieInfo.getCast() == null ? List.of() : List.copyOf(movieInfo.getCast()));
+    }
+
+    // returns the updated count, entries that drop to zero are removed so the maps only hold
+    // facets that exist
+    private static <K> long increment(ConcurrentMap<K, Long> counts, K key, long delta) {
+        var updated = counts.compute(key, (k, count) -> {
+            var sum = (count == null ? 0 : count) + delta;
+            return sum <= 0 ? null : sum;
+        });
+        return updated == null ? 0 : updated;
+    }
+
+    /**
+     * Recomputes both histograms with one aggregation each and swaps them in, with the writes
+     * made in the meantime applied on top.
+     */
+    public Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+            // LinkedHashMap: replayed in the order the titles were first written
+            var writes = new LinkedHashMap<String, Change>();
+            synchronized (this) {
+                writesDuringRebuilds.add(writes);
+            }
+            return Mono.zip(movieInfoRepository.countByYear(), movieInfoRepository.countByYearAndCast())
+                    .doOnNext(aggregated -> {
+                        var rebuilt = new Counts();
+                        rebuilt.yearCounts.putAll(aggregated.getT1());
+                        aggregated.getT2().forEach((year, castCounts) -> {
+                            rebuilt.castCountsByYear.put(year, new ConcurrentHashMap<>(castCounts));
+                            castCounts.forEach(rebuilt::incrementRanked);
+                        });
+                        synchronized (this) {
+                            writes.values().forEach(rebuilt::apply);
+                            counts = rebuilt;
+                        }
+                        log.info("Facet counts rebuilt for {} years", rebuilt.yearCounts.size());
+                    })
+                    .doFinally(signalType -> {
+                        synchronized (this) {
+                            writesDuringRebuilds.remove(writes);
+                        }
+                    })
+                    .then();
+        });
+    }
+
+    public MovieInfoFacets facets(Integer fromYear, Integer toYear, int castLimit) {
+        var current = counts;
+        var years = slice(current.yearCounts, fromYear, toYear);
+
+        var cast = new LinkedHashMap<String, Long>();
+        if (fromYear == null && toYear == null) {
+            // the ranked totals over all years answer the common case without a merge
+            current.rankedCast.stream()
+                    .limit(castLimit)
+                    .forEach(castCount -> cast.put(castCount.cast, castCount.count));
+            return new MovieInfoFacets(new LinkedHashMap<>(years), cast);
+        }
+
+        var castTotals = new HashMap<String, Long>();
+        slice(current.castCountsByYear, fromYear, toYear).values()
+                .forEach(castCounts -> castCounts.forEach((name, count) -> castTotals.merge(name, count, Long::sum)));
+        castTotals.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(castLimit)
+                .forEach(entry -> cast.put(entry.getKey(), entry.getValue()));
+
+        return new MovieInfoFacets(new LinkedHashMap<>(years), cast);
+    }
+
+    private static <V> Map<Integer, V> slice(ConcurrentNavigableMap<Integer, V> byYear, Integer fromYear, Integer toYear) {
+        if (fromYear != null && toYear != null) {
+            return fromYear > toYear ? Map.of() : byYear.subMap(fromYear, true, toYear, true);
+        }
+        if (fromYear != null) {
+            return byYear.tailMap(fromYear, true);
+        }
+        if (toYear != null) {
+            return byYear.headMap(toYear, true);
+        }
+        return byYear;
+    }
+}
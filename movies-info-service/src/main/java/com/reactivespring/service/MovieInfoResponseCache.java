@@ -0,0 +1,81 @@
+package com.reactivespring.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.EncodedMovieInfo;
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Full MovieInfo documents kept as the JSON bytes GET /v1/movieinfos/{id} sends, so a hit costs
+ * neither a Mongo read nor a Jackson encode. The cache is bounded by the total size of the
+ * cached JSON rather than by the number of entries.
+ * <p>
+ * MovieInfoService invalidates an id before a write of it completes. Writes made through
+ * another instance are only picked up once the entry expires after {@code ttl}.
+ */
+@Component
+public class MovieInfoResponseCache {
+
+    // rough per entry cost on top of the JSON itself: key, entry and array headers
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final Cache<String, EncodedMovieInfo> cache;
+    private final ObjectMapper objectMapper;
+
+    // bumped by every invalidation, a load that started before one must not be cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public MovieInfoResponseCache(ObjectMapper objectMapper,
+                                  @Value("${movieInfo.responseCache.maxBytes:67108864}") long maxBytes,
+                                  @Value("${movieInfo.responseCache.ttl:10m}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String id, EncodedMovieInfo encoded) ->
+                        id.length() + encoded.getJson().length + ENTRY_OVERHEAD_BYTES)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * @param loader reads the full document, called on a miss only
+     */
+    public Mono<EncodedMovieInfo> get(String id, Supplier<Mono<MovieInfo>> loader) {
+        return Mono.defer(() -> {
+            var cached = cache.getIfPresent(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            var generation = invalidations.get();
+            return loader.get()
+                    .map(this::encode)
+                    .doOnNext(encoded -> cache.asMap().compute(id, (key, current) ->
+                            // compute runs atomically with the removal done by invalidate, so a
+                            // load that raced with a write never brings the old bytes back
+                            invalidations.get() == generation ? encoded : current));
+        });
+    }
+
+    public void invalidate(String id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    private EncodedMovieInfo encode(MovieInfo movieInfo) {
+        try {
+            return new EncodedMovieInfo(movieInfo.getMovieInfoId(), objectMapper.writeValueAsBytes(movieInfo),
+                    movieInfo.getVersion());
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("MovieInfo " + movieInfo.getMovieInfoId() + " could not be encoded", ex);
+        }
+    }
+}
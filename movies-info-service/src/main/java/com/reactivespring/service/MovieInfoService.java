@@ -1,54 +1,330 @@
 package com.reactivespring.service;
 
+import com.reactivespring.domain.BulkItemResult;
+import com.reactivespring.domain.CursorPage;
+import com.reactivespring.domain.EncodedMovieInfo;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoFacets;
+import com.reactivespring.domain.MovieInfoSuggestion;
+import com.reactivespring.exception.MovieInfoConflictException;
+import com.reactivespring.exception.MovieInfoDataException;
+import com.reactivespring.exception.MovieInfoNotfoundException;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.CursorCodec;
+import com.reactivespring.util.FieldSelection;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class MovieInfoService {
 
     private MovieInfoRepository movieInfoRepository;
+    private Validator validator;
+    private MovieInfoSuggestIndex movieInfoSuggestIndex;
+    private MovieInfoFacetCounts movieInfoFacetCounts;
+    private MovieInfoResponseCache movieInfoResponseCache;
+
+    @Value("${movieInfo.stream.batchSize:100}")
+    private int streamBatchSize;
+
+    @Value("${movieInfo.page.defaultSize:20}")
+    private int defaultPageSize;
+
+    @Value("${movieInfo.page.maxSize:100}")
+    private int maxPageSize;
+
+    @Value("${movieInfo.bulk.batchSize:500}")
+    private int bulkBatchSize;
+
+    @Value("${movieInfo.batch.maxIds:100}")
+    private int batchMaxIds;
 
-    public MovieInfoService(MovieInfoRepository movieInfoRepository){
+    @Value("${movieInfo.suggest.defaultLimit:10}")
+    private int suggestDefaultLimit;
+
+    @Value("${movieInfo.suggest.maxLimit:50}")
+    private int suggestMaxLimit;
+
+    @Value("${movieInfo.facets.defaultCastLimit:20}")
+    private int facetsDefaultCastLimit;
+
+    @Value("${movieInfo.facets.maxCastLimit:100}")
+    private int facetsMaxCastLimit;
+
+    public MovieInfoService(MovieInfoRepository movieInfoRepository, Validator validator,
+                            MovieInfoSuggestIndex movieInfoSuggestIndex, MovieInfoFacetCounts movieInfoFacetCounts,
+                            MovieInfoResponseCache movieInfoResponseCache){
         this.movieInfoRepository=movieInfoRepository;
+        this.validator=validator;
+        this.movieInfoSuggestIndex=movieInfoSuggestIndex;
+        this.movieInfoFacetCounts=movieInfoFacetCounts;
+        this.movieInfoResponseCache=movieInfoResponseCache;
     }
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
 
-        System.out.println(movieInfo);
-        return movieInfoRepository.save(movieInfo).log();
+        // a new document always starts at version 0, whatever the request carried
+        movieInfo.setVersion(null);
+        // without a version save is an insert, so an id that is already taken fails instead of
+        // overwriting the stored movie; PUT is the way to replace one
+        return movieInfoRepository.save(movieInfo)
+                .onErrorMap(DuplicateKeyException.class, ex -> new MovieInfoConflictException(
+                        "MovieInfo already exists for the id : " + movieInfo.getMovieInfoId()))
+                .doOnNext(saved -> indexMovieInfo(null, saved));
+
+    }
 
+    public Flux<BulkItemResult> bulkAddMovieInfo(Flux<MovieInfo> movieInfos) {
+        return movieInfos
+                .index()
+                .buffer(bulkBatchSize)
+                .concatMap(this::insertBatch);
     }
 
-    public Flux<MovieInfo> getAllMovieInfo() {
-        return movieInfoRepository.findAll();
+    private Flux<BulkItemResult> insertBatch(List<Tuple2<Long, MovieInfo>> batch) {
+        var results = new BulkItemResult[batch.size()];
+        var valid = new ArrayList<MovieInfo>(batch.size());
+        var validPositions = new ArrayList<Integer>(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            var index = batch.get(i).getT1();
+            var movieInfo = batch.get(i).getT2();
+            var violations = validator.validate(movieInfo);
+            if (violations.isEmpty()) {
+                valid.add(movieInfo);
+                validPositions.add(i);
+            } else {
+                var errorMessage = violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(","));
+                results[i] = new BulkItemResult(index, BulkItemResult.Status.INVALID, movieInfo.getMovieInfoId(), errorMessage);
+            }
+        }
+        if (valid.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+
+        return movieInfoRepository.insertUnordered(valid)
+                .flatMapMany(failures -> {
+                    for (int j = 0; j < valid.size(); j++) {
+                        int i = validPositions.get(j);
+                        var failure = failures.get(j);
+                        if (failure == null) {
+                            indexMovieInfo(null, valid.get(j));
+                        }
+                        results[i] = failure == null
+                                ? new BulkItemResult(batch.get(i).getT1(), BulkItemResult.Status.CREATED, valid.get(j).getMovieInfoId(), null)
+                                : new BulkItemResult(batch.get(i).getT1(), BulkItemResult.Status.FAILED, valid.get(j).getMovieInfoId(), failure);
+                    }
+                    return Flux.fromArray(results);
+                });
     }
 
-    public Mono<MovieInfo> getByIdMovieInfo(String id) {
-        return movieInfoRepository.findById(id);
+    public Flux<MovieInfo> getAllMovieInfo(String fields) {
+        // only the first page, in the order limit and cursor page through; the whole collection
+        // is read page by page or through the NDJSON stream, which is paced by backpressure
+        return Flux.defer(() -> movieInfoRepository.findPage(null, defaultPageSize, selectFields(fields)));
     }
 
-    public Mono<MovieInfo> updateMovieInfo(String id, MovieInfo updatedMovieInfo){
-      //  return movieInfoRepository.save(updatedMovieInfo);
-       return movieInfoRepository
-               .findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
+    public Flux<MovieInfo> streamAllMovieInfo(String fields) {
+        // limitRate turns the one-by-one demand of a streaming response into cursor sized
+        // requests, so at most one batch is buffered however large the collection is
+        return Flux.defer(() -> movieInfoRepository.streamAll(streamBatchSize, selectFields(fields)))
+                .limitRate(streamBatchSize);
+    }
 
-                    return movieInfoRepository.save(movieInfo);
+    public Mono<CursorPage<MovieInfo>> getMovieInfoPage(String cursor, Integer limit, String fields) {
+        var pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+        if (pageSize <= 0) {
+            return Mono.error(new MovieInfoDataException("limit must be a Positive Value"));
+        }
+        String afterId;
+        List<String> selectedFields;
+        try {
+            afterId = cursor == null ? null : CursorCodec.decode(cursor);
+            selectedFields = selectFields(fields);
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(new MovieInfoDataException(ex.getMessage()));
+        }
 
+        // one extra document tells us whether there is a next page without a count query
+        return movieInfoRepository.findPage(afterId, pageSize + 1, selectedFields)
+                .collectList()
+                .map(movieInfos -> {
+                    if (movieInfos.size() <= pageSize) {
+                        return new CursorPage<>(movieInfos, null);
+                    }
+                    var page = movieInfos.subList(0, pageSize);
+                    return new CursorPage<>(page, CursorCodec.encode(page.get(pageSize - 1).getMovieInfoId()));
                 });
+    }
+
+    public Flux<MovieInfo> getMovieInfoByIds(List<String> ids, String fields) {
+        var distinctIds = ids.stream()
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        if (distinctIds.isEmpty() || distinctIds.size() > batchMaxIds) {
+            return Flux.error(new MovieInfoDataException("ids must contain between 1 and " + batchMaxIds + " ids"));
+        }
+        // a single $in query on _id, ids that do not exist are simply absent from the result
+        return Flux.defer(() -> movieInfoRepository.findByIds(distinctIds, selectFields(fields)));
+    }
+
+    public Flux<MovieInfo> searchMovieInfo(String name, boolean ignoreCase, Integer fromYear, Integer toYear, String cast) {
+        var yearRange = fromYear != null || toYear != null;
+        var criteriaCount = (name != null ? 1 : 0) + (yearRange ? 1 : 0) + (cast != null ? 1 : 0);
+        if (criteriaCount != 1) {
+            return Flux.error(new MovieInfoDataException("exactly one of name, fromYear/toYear or cast must be present"));
+        }
+        if (name != null) {
+            return ignoreCase
+                    ? movieInfoRepository.findByNameCaseInsensitive(name)
+                    : movieInfoRepository.findByName(name);
+        }
+        if (cast != null) {
+            return movieInfoRepository.findByCast(cast);
+        }
+        var years = Range.of(
+                fromYear == null ? Range.Bound.unbounded() : Range.Bound.inclusive(fromYear),
+                toYear == null ? Range.Bound.unbounded() : Range.Bound.inclusive(toYear));
+        return movieInfoRepository.findByYearBetween(years, Sort.by("year", "name"));
+    }
 
-        
+    public Flux<MovieInfoSuggestion> suggestMovieInfo(String prefix, Integer limit) {
+        var suggestLimit = limit == null ? suggestDefaultLimit : Math.min(limit, suggestMaxLimit);
+        if (prefix == null || prefix.isBlank()) {
+            return Flux.error(new MovieInfoDataException("prefix must be present"));
+        }
+        if (suggestLimit <= 0) {
+            return Flux.error(new MovieInfoDataException("limit must be a Positive Value"));
+        }
+        return Flux.defer(() -> Flux.fromIterable(movieInfoSuggestIndex.suggest(prefix, suggestLimit)));
+    }
+
+    public Mono<MovieInfoFacets> getMovieInfoFacets(Integer fromYear, Integer toYear, Integer castLimit) {
+        var limit = castLimit == null ? facetsDefaultCastLimit : Math.min(castLimit, facetsMaxCastLimit);
+        if (limit < 0) {
+            return Mono.error(new MovieInfoDataException("castLimit must not be negative"));
+        }
+        return Mono.fromSupplier(() -> movieInfoFacetCounts.facets(fromYear, toYear, limit));
+    }
+
+    public Mono<Void> rebuildMovieInfoFacets() {
+        return movieInfoFacetCounts.rebuild();
+    }
+
+    public Mono<MovieInfo> getByIdMovieInfo(String id, String fields) {
+        return Mono.defer(() -> {
+            return movieInfoRepository.findByIds(List.of(id), selectFields(fields)).next();
+        });
+    }
+
+    /**
+     * The full document as the JSON the API returns, served from the response cache.
+     */
+    public Mono<EncodedMovieInfo> getEncodedMovieInfo(String id) {
+        return movieInfoResponseCache.get(id, () -> movieInfoRepository.findByIds(List.of(id), null).next());
+    }
+
+    public Mono<MovieInfo> updateMovieInfo(String id, MovieInfo updatedMovieInfo){
+        // one findAndModify instead of findById + save: no second round trip and no
+        // window in which a concurrent edit of the same document gets overwritten
+        var fields = new LinkedHashMap<String, Object>();
+        fields.put("name", updatedMovieInfo.getName());
+        fields.put("year", updatedMovieInfo.getYear());
+        fields.put("cast", updatedMovieInfo.getCast());
+        fields.put("release_date", updatedMovieInfo.getRelease_date());
+        return updateFields(id, fields);
+    }
+
+    public Mono<MovieInfo> patchMovieInfo(String id, MovieInfo movieInfoPatch) {
+        // only the fields present in the request are validated and set
+        var fields = new LinkedHashMap<String, Object>();
+        if (movieInfoPatch.getName() != null) {
+            fields.put("name", movieInfoPatch.getName());
+        }
+        if (movieInfoPatch.getYear() != null) {
+            fields.put("year", movieInfoPatch.getYear());
+        }
+        if (movieInfoPatch.getCast() != null) {
+            fields.put("cast", movieInfoPatch.getCast());
+        }
+        if (movieInfoPatch.getRelease_date() != null) {
+            fields.put("release_date", movieInfoPatch.getRelease_date());
+        }
+        if (fields.isEmpty()) {
+            return Mono.error(new MovieInfoDataException("movieInfo patch must contain at least one field"));
+        }
+
+        var errorMessage = fields.entrySet().stream()
+                .flatMap(field -> validator.validateValue(MovieInfo.class, field.getKey(), field.getValue()).stream())
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+        if (!errorMessage.isEmpty()) {
+            return Mono.error(new MovieInfoDataException(errorMessage));
+        }
+        return updateFields(id, fields);
+    }
+
+    private Mono<MovieInfo> updateFields(String id, Map<String, Object> fields) {
+        // the write returns the previous version, the updated one is that with the fields set
+        return movieInfoRepository.updateFields(id, fields)
+                .map(previous -> {
+                    var updated = new MovieInfo(previous.getMovieInfoId(), previous.getName(), previous.getYear(),
+                            previous.getCast(), previous.getRelease_date(),
+                            previous.getVersion() == null ? 1L : previous.getVersion() + 1);
+                    new BeanWrapperImpl(updated).setPropertyValues(fields);
+                    indexMovieInfo(previous, updated);
+                    return updated;
+                });
     }
 
     public Mono<Void> deleteByIdMovieInfo(String id) {
-      return    movieInfoRepository.deleteById(id).log();
+        return movieInfoRepository.findAndRemoveById(id)
+                .switchIfEmpty(Mono.error(new MovieInfoNotfoundException("MovieInfo not found for the given id : " + id)))
+                .doOnNext(this::unindexMovieInfo)
+                .then();
+    }
+
+    // keeps the in-memory suggest index, facet counts and response cache in line with a
+    // successful write; runs before the write's response is emitted
+    // previous: the document before the write, null when it created the document
+    private void indexMovieInfo(MovieInfo previous, MovieInfo movieInfo) {
+        movieInfoResponseCache.invalidate(movieInfo.getMovieInfoId());
+        movieInfoSuggestIndex.put(movieInfo);
+        movieInfoFacetCounts.update(previous, movieInfo);
+    }
+
+    private void unindexMovieInfo(MovieInfo previous) {
+        movieInfoResponseCache.invalidate(previous.getMovieInfoId());
+        movieInfoSuggestIndex.remove(previous.getMovieInfoId());
+        movieInfoFacetCounts.remove(previous);
+    }
 
+    private static List<String> selectFields(String fields) {
+        try {
+            return FieldSelection.parse(fields, MovieInfo.class);
+        } catch (IllegalArgumentException ex) {
+            throw new MovieInfoDataException(ex.getMessage());
+        }
     }
 }
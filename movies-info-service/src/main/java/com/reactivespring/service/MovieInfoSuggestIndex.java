@@ -0,0 +1,155 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoSuggestion;
+import com.reactivespring.repository.MovieInfoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory prefix index over MovieInfo names for the suggest endpoint. Names are kept in
+ * a sorted map keyed by the lower cased name (plus the id, so equal names do not collide),
+ * which makes a prefix lookup a range scan that never touches Mongo.
+ * <p>
+ * A prefix of one or two characters matches a large part of the catalog, so for those the
+ * names are also kept in ranked buckets per prefix and a lookup reads only the first
+ * {@code limit} entries of its bucket.
+ * <p>
+ * The index is loaded once at startup and kept current by MovieInfoService writes; changes
+ * made through another instance only show up here after a restart.
+ */
+@Component
+@Slf4j
+public class MovieInfoSuggestIndex {
+
+    // newest first, then alphabetical
+    private static final Comparator<MovieInfoSuggestion> RANKING = Comparator
+            .comparing(MovieInfoSuggestion::getYear, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(MovieInfoSuggestion::getName);
+
+    // prefixes up to this length are answered from the ranked buckets
+    private static final int BUCKETED_PREFIX_LENGTH = 2;
+
+    // the id makes entries with equal name and year distinct within a bucket
+    private static final Comparator<MovieInfoSuggestion> BUCKET_ORDER = RANKING
+            .thenComparing(MovieInfoSuggestion::getMovieInfoId);
+
+    private final ConcurrentNavigableMap<String, MovieInfoSuggestion> byName = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, String> keyById = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableSet<MovieInfoSuggestion>> rankedByShortPrefix = new ConcurrentHashMap<>();
+
+    private MovieInfoRepository movieInfoRepository;
+
+    @Value("${movieInfo.stream.batchSize:100}")
+    private int loadBatchSize;
+
+    public MovieInfoSuggestIndex(MovieInfoRepository movieInfoRepository) {
+        this.movieInfoRepository = movieInfoRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        movieInfoRepository.streamAll(loadBatchSize, List.of("name", "year"))
+                .doOnNext(this::put)
+                .count()
+                .subscribe(count -> log.info("Suggest index loaded with {} names", count),
+                        ex -> log.error("Suggest index load failed : {}", ex.getMessage(), ex));
+    }
+
+    // writes are serialised so the name map and the buckets move together, reads take no lock
+    public synchronized void put(MovieInfo movieInfo) {
+        if (movieInfo.getMovieInfoId() == null) {
+            return;
+        }
+        if (movieInfo.getName() == null) {
+            remove(movieInfo.getMovieInfoId());
+            return;
+        }
+        var name = normalize(movieInfo.getName());
+        var key = name + '\u0000' + movieInfo.getMovieInfoId();
+        var suggestion = new MovieInfoSuggestion(movieInfo.getMovieInfoId(), movieInfo.getName(), movieInfo.getYear());
+        var previousKey = keyById.put(movieInfo.getMovieInfoId(), key);
+        if (previousKey != null) {
+            unrank(previousKey, byName.get(previousKey));
+        }
+        byName.put(key, suggestion);
+        if (previousKey != null && !previousKey.equals(key)) {
+            byName.remove(previousKey);
+        }
+        for (int length = 1; length <= Math.min(BUCKETED_PREFIX_LENGTH, name.length()); length++) {
+            rankedByShortPrefix.computeIfAbsent(name.substring(0, length),
+                    prefix -> new ConcurrentSkipListSet<>(BUCKET_ORDER)).add(suggestion);
+        }
+    }
+
+    public synchronized void remove(String movieInfoId) {
+        var key = keyById.remove(movieInfoId);
+        if (key != null) {
+            unrank(key, byName.remove(key));
+        }
+    }
+
+    private void unrank(String key, MovieInfoSuggestion suggestion) {
+        if (suggestion == null) {
+            return;
+        }
+        var name = key.substring(0, key.indexOf('\u0000'));
+        for (int length = 1; length <= Math.min(BUCKETED_PREFIX_LENGTH, name.length()); length++) {
+            var bucket = rankedByShortPrefix.get(name.substring(0, length));
+            if (bucket != null) {
+                bucket.remove(suggestion);
+            }
+        }
+    }
+
+    public List<MovieInfoSuggestion> suggest(String prefix, int limit) {
+        var from = normalize(prefix);
+        if (!from.isEmpty() && from.length() <= BUCKETED_PREFIX_LENGTH) {
+            var bucket = rankedByShortPrefix.get(from);
+            if (bucket == null) {
+                return List.of();
+            }
+            var suggestions = new ArrayList<MovieInfoSuggestion>(limit);
+            for (var suggestion : bucket) {
+                if (suggestions.size() == limit) {
+                    break;
+                }
+                suggestions.add(suggestion);
+            }
+            return suggestions;
+        }
+
+        var matches = byName.subMap(from, true, from + Character.MAX_VALUE, true).values();
+
+        // bounded heap: keeps the best `limit` matches without sorting all of them
+        var best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        for (var suggestion : matches) {
+            best.add(suggestion);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        var suggestions = new ArrayList<>(best);
+        suggestions.sort(RANKING);
+        return suggestions;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
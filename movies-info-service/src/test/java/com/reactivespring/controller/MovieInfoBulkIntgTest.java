@@ -0,0 +1,144 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.BulkItemResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// a small batch size, so a handful of items spans several insertMany calls
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "movieInfo.bulk.batchSize=3")
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class MovieInfoBulkIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    static String BULK_URL = "/v1/movieinfos/bulk";
+
+    @BeforeEach
+    void setUp() {
+        movieInfoRepository.save(new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")))
+                .block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    static MovieInfo movieInfo(String id, String name) {
+        return new MovieInfo(id, name, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+
+    List<BulkItemResult> bulkAdd(MediaType contentType, Object body) {
+        var results = webTestClient
+                .post()
+                .uri(BULK_URL)
+                .contentType(contentType)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(BulkItemResult.class)
+                .returnResult()
+                .getResponseBody();
+        assertNotNull(results);
+        return results;
+    }
+
+    static List<BulkItemResult.Status> statuses(List<BulkItemResult> results) {
+        return results.stream().map(BulkItemResult::getStatus).collect(Collectors.toList());
+    }
+
+    @Test
+    void bulkAddJsonArray() {
+
+        var results = bulkAdd(MediaType.APPLICATION_JSON,
+                List.of(movieInfo(null, "Batman Begins"), movieInfo(null, "The Dark Knight")));
+
+        assertEquals(List.of(BulkItemResult.Status.CREATED, BulkItemResult.Status.CREATED), statuses(results));
+        assertEquals(List.of(0L, 1L), results.stream().map(BulkItemResult::getIndex).collect(Collectors.toList()));
+        results.forEach(result -> assertNotNull(result.getMovieInfoId()));
+        assertEquals(3L, movieInfoRepository.count().block());
+    }
+
+    @Test
+    void bulkAddNdjson() {
+
+        var body = "{\"movieInfoId\":\"b1\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"]}\n"
+                + "{\"movieInfoId\":\"b2\",\"name\":\"The Dark Knight\",\"year\":2008,\"cast\":[\"Heath Ledger\"]}\n";
+
+        var results = bulkAdd(MediaType.APPLICATION_NDJSON, body);
+
+        assertEquals(List.of(BulkItemResult.Status.CREATED, BulkItemResult.Status.CREATED), statuses(results));
+        assertEquals(List.of("b1", "b2"), results.stream().map(BulkItemResult::getMovieInfoId).collect(Collectors.toList()));
+        assertEquals("The Dark Knight", movieInfoRepository.findById("b2").block().getName());
+    }
+
+    @Test
+    void invalidItemIsReportedAndTheRestInserted() {
+
+        var invalid = new MovieInfo("bad", "", -1, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+
+        var results = bulkAdd(MediaType.APPLICATION_JSON, List.of(movieInfo("b1", "Batman Begins"), invalid));
+
+        assertEquals(List.of(BulkItemResult.Status.CREATED, BulkItemResult.Status.INVALID), statuses(results));
+        assertEquals("movieInfo.name must be present,movieInfo.year must be a Positive Value", results.get(1).getMessage());
+        assertEquals(false, movieInfoRepository.existsById("bad").block());
+    }
+
+    @Test
+    void duplicateIdInTheMiddleOfABatchFailsOnlyThatItem() {
+
+        // the invalid item shifts the valid ones, so the write error index (1) has to be
+        // mapped back to position 2 of the batch
+        var invalid = new MovieInfo("bad", "", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+
+        var results = bulkAdd(MediaType.APPLICATION_JSON,
+                List.of(invalid, movieInfo("b1", "Batman Begins"), movieInfo("abc", "Duplicate")));
+
+        assertEquals(List.of(BulkItemResult.Status.INVALID, BulkItemResult.Status.CREATED, BulkItemResult.Status.FAILED),
+                statuses(results));
+        assertEquals("abc", results.get(2).getMovieInfoId());
+        assertNotNull(results.get(2).getMessage());
+        assertEquals("Dark Knight Rises", movieInfoRepository.findById("abc").block().getName());
+        assertEquals(true, movieInfoRepository.existsById("b1").block());
+    }
+
+    @Test
+    void bodyLargerThanTheBatchSizeIsInsertedInSeveralBatches() {
+
+        var results = bulkAdd(MediaType.APPLICATION_JSON, List.of(
+                movieInfo("b1", "One"), movieInfo("b2", "Two"), movieInfo("b3", "Three"),
+                movieInfo("abc", "Duplicate"), movieInfo("b5", "Five"), movieInfo("b6", "Six"),
+                movieInfo("b7", "Seven")));
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L),
+                results.stream().map(BulkItemResult::getIndex).collect(Collectors.toList()));
+        assertEquals(List.of(BulkItemResult.Status.CREATED, BulkItemResult.Status.CREATED, BulkItemResult.Status.CREATED,
+                        BulkItemResult.Status.FAILED, BulkItemResult.Status.CREATED, BulkItemResult.Status.CREATED,
+                        BulkItemResult.Status.CREATED),
+                statuses(results));
+        assertEquals(7L, movieInfoRepository.count().block());
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
@@ -67,6 +68,22 @@ class MovieInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void addMovieInfo_existingId() {
+        var movieInfo = new MovieInfo("abc", "Sherrsha",
+                2005, List.of("Shidhart Malhotra", "Kiara advani"), LocalDate.parse("2021-06-15"));
+
+        webTestClient
+                .post()
+                .uri("/v1/movieinfos")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        assertEquals("Dark Knight Rises", movieInfoRepository.findById("abc").block().getName());
+    }
+
     @Test
     void getAllMovieInfo() {
         webTestClient
@@ -1,24 +1,37 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.CursorPage;
+import com.reactivespring.domain.EncodedMovieInfo;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MovieInfoConflictException;
 import com.reactivespring.service.MovieInfoService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(MovieInfoController.class)
+@Import(SimpleMeterRegistry.class)
 @AutoConfigureWebTestClient
 class MovieInfoControllerUnitTest {
 
@@ -32,6 +45,8 @@ class MovieInfoControllerUnitTest {
 
     static String MOVIE_INFO_URL="/api//movieinfos";
 
+    static String MOVIE_INFO_V1_URL="/v1/movieinfos";
+
 
     @Test
     public void getAllMovieInfo(){
@@ -41,7 +56,7 @@ class MovieInfoControllerUnitTest {
                         2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
 
 
-        when(movieInfoServiceMock.getAllMovieInfo()).thenReturn(Flux.fromIterable(movieinfos));
+        when(movieInfoServiceMock.getAllMovieInfo(isNull())).thenReturn(Flux.fromIterable(movieinfos));
 
         webTestClient
                 .get()
@@ -56,13 +71,155 @@ class MovieInfoControllerUnitTest {
     }
 
 
+    @Test
+    void streamAllMovieInfo() {
+        var movieinfos = List.of(new MovieInfo(null, "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo(null, "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(movieInfoServiceMock.streamAllMovieInfo(isNull())).thenReturn(Flux.fromIterable(movieinfos));
+
+        var movieInfoFlux = webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        StepVerifier.create(movieInfoFlux)
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .assertNext(movieInfo -> assertEquals("The Dark Knight", movieInfo.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void getAllMovieInfo_defaultsToJsonArray() {
+
+        when(movieInfoServiceMock.getAllMovieInfo(isNull())).thenReturn(Flux.just(new MovieInfo(null, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
+
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL)
+                .exchange()
+                .expectStatus()
+                .isFound()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getMovieInfoPage() {
+
+        when(movieInfoServiceMock.getMovieInfoPage(isNull(), eq(1), isNull())).thenReturn(Mono.just(new CursorPage<>(
+                List.of(new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))), "YWJj")));
+
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL + "?limit=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.items[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.nextCursor").isEqualTo("YWJj");
+    }
+
+    @Test
+    void getMovieInfoPage_withFields() {
+
+        when(movieInfoServiceMock.getMovieInfoPage(isNull(), eq(1), eq("name,year"))).thenReturn(Mono.just(new CursorPage<>(
+                List.of(new MovieInfo("abc", "Dark Knight Rises", 2012, null, null)), null)));
+
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL + "?limit=1&fields=name,year")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.items[0].name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.items[0].cast").doesNotExist()
+                .jsonPath("$.nextCursor").doesNotExist();
+    }
+
+    @Test
+    void getByIdMovieInfo_notModified() {
+
+        when(movieInfoServiceMock.getEncodedMovieInfo(eq("abc"))).thenReturn(Mono.just(new EncodedMovieInfo("abc",
+                "{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\",\"version\":3}".getBytes(StandardCharsets.UTF_8), 3L)));
+
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL + "/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises");
+
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL + "/{id}", "abc")
+                .ifNoneMatch("\"3\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void getMovieInfoByIds() {
+
+        when(movieInfoServiceMock.getMovieInfoByIds(eq(List.of("abc", "def")), isNull())).thenReturn(Flux.just(
+                new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_V1_URL + "/batch?ids=abc,def")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void patchMovieInfo() {
+
+        when(movieInfoServiceMock.patchMovieInfo(eq("abc"), isA(MovieInfo.class))).thenReturn(Mono.just(
+                new MovieInfo("abc", "Dark Knight Rises",
+                        2013, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+
+        webTestClient
+                .patch()
+                .uri(MOVIE_INFO_V1_URL + "/{id}", "abc")
+                .bodyValue(new MovieInfo(null, null, 2013, null, null))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.year").isEqualTo(2013);
+    }
+
     @Test
     public void getByIdMovieInfo(){
 
 
         var movieInoId = "abc";
-        when(movieInfoServiceMock.getByIdMovieInfo(isA(String.class))).thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises",
-                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+        when(movieInfoServiceMock.getEncodedMovieInfo(isA(String.class))).thenReturn(Mono.just(new EncodedMovieInfo("abc",
+                "{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\"}".getBytes(StandardCharsets.UTF_8), null)));
 
 
         webTestClient
@@ -109,6 +266,26 @@ class MovieInfoControllerUnitTest {
 
 
 
+    @Test
+    void addMovieInfo_existingId() {
+
+        var movieInfo = new MovieInfo("abc", "Sherrsha",
+                2005, List.of("Shidhart Malhotra", "Kiara advani"), LocalDate.parse("2021-06-15"));
+
+        when(movieInfoServiceMock.addMovieInfo(isA(MovieInfo.class)))
+                .thenReturn(Mono.error(new MovieInfoConflictException("MovieInfo already exists for the id : abc")));
+
+        webTestClient
+                .post()
+                .uri(MOVIE_INFO_V1_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT)
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo already exists for the id : abc");
+    }
+
     @Test
     void updateMovieInfo() {
 
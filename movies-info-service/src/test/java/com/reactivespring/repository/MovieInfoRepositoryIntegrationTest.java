@@ -4,6 +4,8 @@ import com.reactivespring.domain.MovieInfo;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.test.context.ActiveProfiles;
@@ -52,4 +54,34 @@ class MovieInfoRepositoryIntegrationTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void findByNameCaseInsensitive() {
+
+        StepVerifier.create(movieInfoRepository.findByName("dark knight rises"))
+                .verifyComplete();
+
+        StepVerifier.create(movieInfoRepository.findByNameCaseInsensitive("dark knight rises"))
+                .expectNextMatches(movieInfo -> movieInfo.getMovieInfoId().equals("abc"))
+                .verifyComplete();
+    }
+
+    @Test
+    void findByYearBetween() {
+
+        var moviesFlux = movieInfoRepository.findByYearBetween(Range.closed(2005, 2008), Sort.by("year", "name"));
+
+        StepVerifier.create(moviesFlux)
+                .expectNextMatches(movieInfo -> movieInfo.getYear() == 2005)
+                .expectNextMatches(movieInfo -> movieInfo.getYear() == 2008)
+                .verifyComplete();
+    }
+
+    @Test
+    void findByCast() {
+
+        StepVerifier.create(movieInfoRepository.findByCast("Tom Hardy"))
+                .expectNextMatches(movieInfo -> movieInfo.getName().equals("Dark Knight Rises"))
+                .verifyComplete();
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.publisher.TestPublisher;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MovieInfoFacetCountsTest {
+
+    MovieInfoRepository movieInfoRepositoryMock = mock(MovieInfoRepository.class);
+
+    MovieInfoFacetCounts movieInfoFacetCounts = new MovieInfoFacetCounts(movieInfoRepositoryMock);
+
+    @BeforeEach
+    void setUp() {
+        movieInfoFacetCounts.add(new MovieInfo("1", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+        movieInfoFacetCounts.add(new MovieInfo("2", "The Dark Knight",
+                2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+        movieInfoFacetCounts.add(new MovieInfo("3", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+    }
+
+    @Test
+    void facetsWithinYearRange() {
+
+        var facets = movieInfoFacetCounts.facets(2006, null, 2);
+
+        assertEquals(Map.of(2008, 1L, 2012, 1L), facets.getYears());
+        assertEquals(List.of("Christian Bale", "HeathLedger"), List.copyOf(facets.getCast().keySet()));
+        assertEquals(2L, facets.getCast().get("Christian Bale"));
+    }
+
+    @Test
+    void facetsOverAllYearsAreRanked() {
+
+        var facets = movieInfoFacetCounts.facets(null, null, 2);
+
+        assertEquals(Map.of(2005, 1L, 2008, 1L, 2012, 1L), facets.getYears());
+        assertEquals(List.of("Christian Bale", "HeathLedger"), List.copyOf(facets.getCast().keySet()));
+        assertEquals(3L, facets.getCast().get("Christian Bale"));
+    }
+
+    @Test
+    void updateAndRemoveMoveTheCounts() {
+
+        movieInfoFacetCounts.update(
+                new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"), null),
+                new MovieInfo("3", "Dark Knight Rises", 2008, List.of("Christian Bale", "Tom Hardy"), null));
+        movieInfoFacetCounts.remove(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), null));
+
+        var facets = movieInfoFacetCounts.facets(null, null, 10);
+
+        assertEquals(Map.of(2008, 2L), facets.getYears());
+        assertEquals(Map.of("Christian Bale", 2L, "HeathLedger", 1L, "Tom Hardy", 1L), facets.getCast());
+        assertEquals(Map.of("Christian Bale", 2L, "HeathLedger", 1L, "Tom Hardy", 1L), movieInfoFacetCounts.facets(2008, 2008, 10).getCast());
+    }
+
+    @Test
+    void updateAfterRebuildAppliesToTheRebuiltCounts() {
+
+        // another instance moved "1" to 2008 and added "4"
+        when(movieInfoRepositoryMock.countByYear()).thenReturn(Mono.just(Map.of(2008, 2L, 2012, 2L)));
+        when(movieInfoRepositoryMock.countByYearAndCast()).thenReturn(Mono.just(Map.of(
+                2008, Map.of("Christian Bale", 2L, "Michael Cane", 1L, "HeathLedger", 1L),
+                2012, Map.of("Christian Bale", 1L, "Tom Hardy", 1L, "Gary Oldman", 1L))));
+        movieInfoFacetCounts.rebuild().block();
+
+        movieInfoFacetCounts.update(new MovieInfo("4", null, 2012, List.of("Gary Oldman"), null),
+                new MovieInfo("4", null, 2005, List.of("Gary Oldman"), null));
+        movieInfoFacetCounts.remove(new MovieInfo("1", null, 2008, List.of("Christian Bale", "Michael Cane"), null));
+
+        var facets = movieInfoFacetCounts.facets(null, null, 10);
+
+        assertEquals(Map.of(2005, 1L, 2008, 1L, 2012, 1L), facets.getYears());
+        assertEquals(Map.of("Christian Bale", 2L, "HeathLedger", 1L, "Tom Hardy", 1L, "Gary Oldman", 1L), facets.getCast());
+    }
+
+    @Test
+    void writeDuringRebuildIsNotLost() {
+
+        TestPublisher<Map<Integer, Long>> yearCounts = TestPublisher.create();
+        TestPublisher<Map<Integer, Map<String, Long>>> yearCastCounts = TestPublisher.create();
+        when(movieInfoRepositoryMock.countByYear()).thenReturn(yearCounts.mono());
+        when(movieInfoRepositoryMock.countByYearAndCast()).thenReturn(yearCastCounts.mono());
+        movieInfoFacetCounts.rebuild().subscribe();
+
+        // the delete lands after the aggregations have already counted "2"
+        movieInfoFacetCounts.remove(new MovieInfo("2", null, 2008, List.of("Christian Bale", "HeathLedger"), null));
+        yearCounts.emit(Map.of(2005, 1L, 2008, 1L, 2012, 1L));
+        yearCastCounts.emit(Map.of(
+                2005, Map.of("Christian Bale", 1L, "Michael Cane", 1L),
+                2008, Map.of("Christian Bale", 1L, "HeathLedger", 1L),
+                2012, Map.of("Christian Bale", 1L, "Tom Hardy", 1L)));
+
+        var facets = movieInfoFacetCounts.facets(null, null, 10);
+
+        assertEquals(Map.of(2005, 1L, 2012, 1L), facets.getYears());
+        assertEquals(Map.of("Christian Bale", 2L, "Michael Cane", 1L, "Tom Hardy", 1L), facets.getCast());
+    }
+}
@@ -0,0 +1,80 @@
+package com.reactivespring.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieInfoResponseCacheTest {
+
+    MovieInfoResponseCache movieInfoResponseCache = new MovieInfoResponseCache(new ObjectMapper(), 1_000_000,
+            Duration.ofMinutes(10));
+
+    AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void hitSkipsLoader() {
+
+        StepVerifier.create(movieInfoResponseCache.get("abc", () -> load("Dark Knight Rises")))
+                .expectNextMatches(encoded -> json(encoded.getJson()).contains("\"name\":\"Dark Knight Rises\"")
+                        && encoded.getVersion() == 3L)
+                .verifyComplete();
+        StepVerifier.create(movieInfoResponseCache.get("abc", () -> load("Dark Knight Rises")))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidateForcesReload() {
+
+        StepVerifier.create(movieInfoResponseCache.get("abc", () -> load("Dark Knight Rises")))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        movieInfoResponseCache.invalidate("abc");
+
+        StepVerifier.create(movieInfoResponseCache.get("abc", () -> load("The Dark Knight Rises")))
+                .expectNextMatches(encoded -> json(encoded.getJson()).contains("\"name\":\"The Dark Knight Rises\""))
+                .verifyComplete();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void loadRacingWithInvalidateIsNotCached() {
+
+        Sinks.One<MovieInfo> slowRead = Sinks.one();
+        var staleLoad = movieInfoResponseCache.get("abc", slowRead::asMono).toFuture();
+
+        // the write completes while the read of the old document is still in flight
+        movieInfoResponseCache.invalidate("abc");
+        slowRead.tryEmitValue(new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale"), null, 3L));
+        staleLoad.join();
+
+        StepVerifier.create(movieInfoResponseCache.get("abc", () -> load("The Dark Knight Rises")))
+                .expectNextMatches(encoded -> json(encoded.getJson()).contains("\"name\":\"The Dark Knight Rises\""))
+                .verifyComplete();
+        assertEquals(1, loads.get());
+    }
+
+    private Mono<MovieInfo> load(String name) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return new MovieInfo("abc", name, 2012, List.of("Christian Bale"), null, 3L);
+        });
+    }
+
+    private static String json(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoSuggestion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieInfoSuggestIndexTest {
+
+    MovieInfoSuggestIndex movieInfoSuggestIndex = new MovieInfoSuggestIndex(null);
+
+    @BeforeEach
+    void setUp() {
+        movieInfoSuggestIndex.put(new MovieInfo("1", "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+        movieInfoSuggestIndex.put(new MovieInfo("2", "The Dark Knight",
+                2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+        movieInfoSuggestIndex.put(new MovieInfo("3", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+        movieInfoSuggestIndex.put(new MovieInfo("4", "Dark Shadows",
+                2012, List.of("Johnny Depp"), LocalDate.parse("2012-05-11")));
+    }
+
+    @Test
+    void suggestRanksByYearThenName() {
+
+        var names = names(movieInfoSuggestIndex.suggest("dark", 10));
+
+        assertEquals(List.of("Dark Knight Rises", "Dark Shadows"), names);
+        assertEquals(List.of("Dark Knight Rises"), names(movieInfoSuggestIndex.suggest("DARK", 1)));
+    }
+
+    @Test
+    void updateAndRemoveAreReflected() {
+
+        movieInfoSuggestIndex.put(new MovieInfo("2", "Dark Knight",
+                2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+        movieInfoSuggestIndex.remove("4");
+
+        assertEquals(List.of("Dark Knight Rises", "Dark Knight"), names(movieInfoSuggestIndex.suggest("dark", 10)));
+        assertEquals(List.of(), names(movieInfoSuggestIndex.suggest("the", 10)));
+    }
+
+    @Test
+    void shortPrefixIsServedRankedAndFollowsUpdates() {
+
+        assertEquals(List.of("Dark Knight Rises", "Dark Shadows"), names(movieInfoSuggestIndex.suggest("D", 10)));
+        assertEquals(List.of("Dark Knight Rises"), names(movieInfoSuggestIndex.suggest("da", 1)));
+
+        movieInfoSuggestIndex.put(new MovieInfo("3", "Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+        movieInfoSuggestIndex.remove("4");
+        movieInfoSuggestIndex.put(new MovieInfo("2", "Dark Knight",
+                2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        assertEquals(List.of("Dark Knight"), names(movieInfoSuggestIndex.suggest("da", 10)));
+        assertEquals(List.of("Knight Rises"), names(movieInfoSuggestIndex.suggest("k", 10)));
+        assertEquals(List.of(), names(movieInfoSuggestIndex.suggest("th", 10)));
+    }
+
+    private static List<String> names(List<MovieInfoSuggestion> suggestions) {
+        return suggestions.stream().map(MovieInfoSuggestion::getName).collect(Collectors.toList());
+    }
+}
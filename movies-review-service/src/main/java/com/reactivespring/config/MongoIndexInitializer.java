@@ -0,0 +1,41 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * Creates the indexes the review queries rely on. ensureIndex is a no-op for indexes that
+ * already exist, so this is safe on every start.
+ */
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        var reviewIndexes = reactiveMongoTemplate.indexOps(Review.class);
+        Flux.concat(
+                        // equality on movieInfoId then _id order: serves findReviewsByMovieInfoId,
+                        // the $in lookup and keyset pages within one movie without an in-memory sort
+                        reviewIndexes.ensureIndex(new Index()
+                                .on("movieInfoId", Sort.Direction.ASC)
+                                .on("_id", Sort.Direction.ASC)
+                                .named("movieInfoId_id")))
+                .doOnNext(index -> log.info("Ensured index : {}", index))
+                .doOnError(ex -> log.error("Index creation failed : {}", ex.getMessage(), ex))
+                .subscribe();
+    }
+}
@@ -1,10 +1,12 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
@@ -14,6 +16,8 @@ import javax.validation.constraints.NotNull;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// fields left out by a fields= projection are omitted rather than sent as null
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class Review {
 
     @Id
@@ -26,4 +30,12 @@ public class Review {
 
     @Min(value = 0L, message = "rating.negative : rating is negative and please pass a non-negative value")
     private Double rating;
+
+    // incremented on every write
+    @Version
+    private Long version;
+
+    public Review(String reviewId, Long movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
 }
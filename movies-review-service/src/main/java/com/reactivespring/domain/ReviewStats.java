@@ -0,0 +1,39 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewStats {
+
+    @Id
+    private Long movieInfoId;
+
+    // only reviews that carry a rating are counted
+    private long count;
+
+    private double sum;
+
+    private Double min;
+
+    private Double max;
+
+    // number of ratings per whole rating point, keyed by floor(rating)
+    private Map<String, Long> histogram;
+
+    // incremented whenever a review of the movie is added, changed or removed, so it also
+    // identifies the state of the movie's review list (a rebuild restarts it from a timestamp)
+    private Long version;
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+}
@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class ReviewBufferFullException extends RuntimeException {
+    private String message;
+    public ReviewBufferFullException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -1,11 +1,21 @@
 package com.reactivespring.handler;
 
+import com.reactivespring.domain.CursorPage;
 import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewBufferFullException;
 import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.RatingLeaderboard;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.service.ReviewWriteBehindBuffer;
+import com.reactivespring.util.CursorCodec;
+import com.reactivespring.util.FieldSelection;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
@@ -14,6 +24,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import javax.validation.Validator;
 import javax.validation.ConstraintViolation;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
 
 @Component
@@ -22,25 +34,62 @@ public class ReviewsHandler {
 
 
     private ReviewReactiveRepository reviewReactiveRepository;
+    private ReviewWriteBehindBuffer reviewWriteBehindBuffer;
+    private ReviewStatsService reviewStatsService;
+    private RatingLeaderboard ratingLeaderboard;
 
-    public ReviewsHandler(ReviewReactiveRepository reviewReactiveRepository){
+    public ReviewsHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewWriteBehindBuffer reviewWriteBehindBuffer,
+                          ReviewStatsService reviewStatsService, RatingLeaderboard ratingLeaderboard){
         this.reviewReactiveRepository=reviewReactiveRepository;
+        this.reviewWriteBehindBuffer=reviewWriteBehindBuffer;
+        this.reviewStatsService=reviewStatsService;
+        this.ratingLeaderboard=ratingLeaderboard;
     }
 
     @Autowired
     private Validator validator;
 
+    @Value("${reviews.page.defaultSize:20}")
+    private int defaultPageSize;
 
+    @Value("${reviews.page.maxSize:100}")
+    private int maxPageSize;
+
+    @Value("${reviews.multi.maxIds:100}")
+    private int maxMovieInfoIds;
+
+    @Value("${reviews.leaderboard.size:100}")
+    private int leaderboardSize;
 
-    public Mono<ServerResponse> addReview(ServerRequest request){
 
 
+    public Mono<ServerResponse> addReview(ServerRequest request){
+
+        if (reviewWriteBehindBuffer.isEnabled()) {
+            return addReviewWriteBehind(request);
+        }
         return  request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
+                // a new review always starts at version 0, whatever the request carried
+                .doOnNext(review -> review.setVersion(null))
                 .flatMap(reviewReactiveRepository::save)
+                .flatMap(savedReview -> reviewStatsService.recordAdded(savedReview).thenReturn(savedReview))
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
+    private Mono<ServerResponse> addReviewWriteBehind(ServerRequest request) {
+        // the id is assigned up front so the caller gets it back before the review is persisted
+        return request.bodyToMono(Review.class)
+                .doOnNext(this::validate)
+                .doOnNext(review -> {
+                    review.setReviewId(new ObjectId().toHexString());
+                    review.setVersion(0L);
+                })
+                .flatMap(review -> reviewWriteBehindBuffer.offer(review)
+                        ? ServerResponse.status(HttpStatus.ACCEPTED).bodyValue(review)
+                        : Mono.error(new ReviewBufferFullException("Review buffer is full, retry later")));
+    }
+
     private void validate(Review review) {
         var constraintViolations = validator.validate(review);
         log.info("constraintViolations : {} ", constraintViolations);
@@ -58,14 +107,82 @@ public class ReviewsHandler {
 
     public Mono<ServerResponse> getReviews(ServerRequest serverRequest) {
 
-        var movieInfoId=serverRequest.queryParam("movieInfoId");
-        if(movieInfoId.isPresent()){
-            var reviewsFlux =reviewReactiveRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));
-            return buildReviewResponse(reviewsFlux);
+        List<String> fields;
+        Long movieInfoId;
+        try {
+            fields = FieldSelection.parse(serverRequest.queryParam("fields").orElse(null), Review.class);
+            movieInfoId = serverRequest.queryParam("movieInfoId").map(Long::valueOf).orElse(null);
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(new ReviewDataException(ex.getMessage()));
         }
-        else {
-        var reviewsFlux = reviewReactiveRepository.findAll();
-        return buildReviewResponse(reviewsFlux);}
+        if (serverRequest.queryParam("movieInfoIds").isPresent()) {
+            return getReviewsForMovies(serverRequest, fields);
+        }
+        if (serverRequest.queryParam("limit").isPresent() || serverRequest.queryParam("cursor").isPresent()) {
+            return getReviewsPage(serverRequest, fields);
+        }
+        if (movieInfoId == null) {
+            // without a filter only the first page is returned, in the _id order that limit and
+            // cursor page through, rather than every review in the collection
+            return buildReviewResponse(reviewReactiveRepository.findPage(null, null, defaultPageSize, fields));
+        }
+        return buildReviewResponse(reviewReactiveRepository.findByMovieInfoId(movieInfoId, fields));
+    }
+
+    private Mono<ServerResponse> getReviewsForMovies(ServerRequest serverRequest, List<String> fields) {
+        List<Long> movieInfoIds;
+        Integer perMovieLimit;
+        try {
+            // accepts movieInfoIds=1,2,3 as well as repeated movieInfoIds parameters
+            movieInfoIds = serverRequest.queryParams().get("movieInfoIds").stream()
+                    .flatMap(ids -> Arrays.stream(ids.split(",")))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(Long::valueOf)
+                    .distinct()
+                    .collect(Collectors.toList());
+            perMovieLimit = serverRequest.queryParam("perMovieLimit").map(Integer::valueOf).orElse(null);
+        } catch (NumberFormatException ex) {
+            return Mono.error(new ReviewDataException("movieInfoIds and perMovieLimit must be numbers"));
+        }
+        if (movieInfoIds.isEmpty() || movieInfoIds.size() > maxMovieInfoIds) {
+            return Mono.error(new ReviewDataException("movieInfoIds must contain between 1 and " + maxMovieInfoIds + " ids"));
+        }
+        if (perMovieLimit != null && perMovieLimit <= 0) {
+            return Mono.error(new ReviewDataException("perMovieLimit must be a Positive Value"));
+        }
+        return buildReviewResponse(reviewReactiveRepository.findByMovieInfoIds(movieInfoIds, perMovieLimit, fields));
+    }
+
+    private Mono<ServerResponse> getReviewsPage(ServerRequest serverRequest, List<String> fields) {
+        int pageSize;
+        Long movieInfoId;
+        String afterId;
+        try {
+            pageSize = serverRequest.queryParam("limit")
+                    .map(Integer::valueOf)
+                    .map(limit -> Math.min(limit, maxPageSize))
+                    .orElse(defaultPageSize);
+            movieInfoId = serverRequest.queryParam("movieInfoId").map(Long::valueOf).orElse(null);
+            afterId = serverRequest.queryParam("cursor").map(CursorCodec::decode).orElse(null);
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(new ReviewDataException(ex.getMessage()));
+        }
+        if (pageSize <= 0) {
+            return Mono.error(new ReviewDataException("limit must be a Positive Value"));
+        }
+
+        // one extra review tells us whether there is a next page without a count query
+        var pageMono = reviewReactiveRepository.findPage(movieInfoId, afterId, pageSize + 1, fields)
+                .collectList()
+                .map(reviews -> {
+                    if (reviews.size() <= pageSize) {
+                        return new CursorPage<>(reviews, null);
+                    }
+                    var page = reviews.subList(0, pageSize);
+                    return new CursorPage<>(page, CursorCodec.encode(page.get(pageSize - 1).getReviewId()));
+                });
+        return pageMono.flatMap(ServerResponse.ok()::bodyValue);
     }
 
     private Mono<ServerResponse> buildReviewResponse(Flux<Review> reviewsFlux) {
@@ -74,31 +191,65 @@ public class ReviewsHandler {
 
     public Mono<ServerResponse> updateReview(ServerRequest serverRequest) {
         var reviewId = serverRequest.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(
-                        new RuntimeException("Review not found for the given RewiewId"+reviewId)));
 
-        return existingReview.flatMap(review -> serverRequest.bodyToMono(Review.class)
-                .map(reqReview -> {
-                    review.setComment(reqReview.getComment());
-                    review.setRating(reqReview.getRating());
-                    return review;
-                })
-                .flatMap(reviewReactiveRepository::save)
+        // one findAndModify that sets only comment and rating and hands back the previous
+        // version, instead of findById + save of the whole document
+        return serverRequest.bodyToMono(Review.class)
+                .doOnNext(this::validate)
+                .flatMap(reqReview -> reviewReactiveRepository
+                        .updateCommentAndRating(reviewId, reqReview.getComment(), reqReview.getRating())
+                        .switchIfEmpty(Mono.error(
+                                new ReviewNotFoundException("Review not found for the given RewiewId" + reviewId)))
+                        .flatMap(previousReview -> {
+                            var savedReview = new Review(previousReview.getReviewId(), previousReview.getMovieInfoId(),
+                                    reqReview.getComment(), reqReview.getRating(),
+                                    previousReview.getVersion() == null ? 1L : previousReview.getVersion() + 1);
+                            return reviewStatsService.recordUpdated(previousReview, savedReview)
+                                    .thenReturn(savedReview);
+                        }))
                 .flatMap(savedReview ->
                         ServerResponse.status(HttpStatus.OK)
-                                .bodyValue(savedReview)))
-                .switchIfEmpty(ServerResponse.notFound().build());
-
-
+                                .bodyValue(savedReview));
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest serverRequest) {
         var reviewId = serverRequest.pathVariable("id");
-        var existingReview = reviewReactiveRepository.findById(reviewId);
-             return existingReview
-                      .flatMap(review -> reviewReactiveRepository.deleteById(reviewId)
-                .then(ServerResponse.noContent().build()));
+        return reviewReactiveRepository.findAndRemoveById(reviewId)
+                .switchIfEmpty(Mono.error(
+                        new ReviewNotFoundException("Review not found for the given RewiewId" + reviewId)))
+                .flatMap(review -> reviewStatsService.recordRemoved(review))
+                .then(ServerResponse.noContent().build());
+    }
+
+    public Mono<ServerResponse> getReviewStats(ServerRequest serverRequest) {
+        Long movieInfoId;
+        try {
+            movieInfoId = serverRequest.queryParam("movieInfoId")
+                    .map(Long::valueOf)
+                    .orElseThrow(() -> new IllegalArgumentException("movieInfoId must be present"));
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(new ReviewDataException(ex.getMessage()));
+        }
+        return reviewStatsService.getStats(movieInfoId)
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    public Mono<ServerResponse> getLeaderboard(ServerRequest serverRequest) {
+        int limit;
+        try {
+            limit = serverRequest.queryParam("limit").map(Integer::valueOf).orElse(leaderboardSize);
+        } catch (NumberFormatException ex) {
+            return Mono.error(new ReviewDataException("limit must be a number"));
+        }
+        if (limit <= 0) {
+            return Mono.error(new ReviewDataException("limit must be a Positive Value"));
+        }
+        return ServerResponse.ok().bodyValue(ratingLeaderboard.top(limit));
+    }
+
+    public Mono<ServerResponse> rebuildReviewStats(ServerRequest serverRequest) {
+        return reviewStatsService.rebuild()
+                .then(ServerResponse.noContent().build());
     }
 
 
@@ -0,0 +1,44 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ReviewReactiveRepositoryCustom {
+
+    // fields: property names to read, null for the whole document
+
+    /**
+     * Reviews of one movie, or of all movies when movieInfoId is null.
+     */
+    Flux<Review> findByMovieInfoId(Long movieInfoId, List<String> fields);
+
+    Flux<Review> findPage(Long movieInfoId, String afterId, int limit, List<String> fields);
+
+    /**
+     * Reviews of all the given movies, the reviews of one movie together and in _id order.
+     * Without a perMovieLimit the movies come in movieInfoId order, from one $in query. With a
+     * perMovieLimit only the first reviews of each movie are read, by one capped query per
+     * movie, and the movies come in the order of movieInfoIds.
+     */
+    Flux<Review> findByMovieInfoIds(List<Long> movieInfoIds, Integer perMovieLimit, List<String> fields);
+
+    /**
+     * Writes reviews that already carry their id with one unordered bulk of upserts, so the call
+     * can be retried after a partial failure without creating duplicates.
+     */
+    Mono<Void> upsertAll(List<Review> reviews);
+
+    /**
+     * Sets comment and rating with one findAndModify and returns the review as it was before
+     * the update, or empty when there is no review with that id.
+     */
+    Mono<Review> updateCommentAndRating(String reviewId, String comment, Double rating);
+
+    /**
+     * Removes the review and returns it, or empty when there is no review with that id.
+     */
+    Mono<Review> findAndRemoveById(String reviewId);
+}
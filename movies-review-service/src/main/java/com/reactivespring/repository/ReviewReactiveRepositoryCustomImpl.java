@@ -0,0 +1,123 @@
+package com.reactivespring.repository;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.MongoDeadline;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReviewReactiveRepositoryCustomImpl implements ReviewReactiveRepositoryCustom {
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Review> findByMovieInfoId(Long movieInfoId, List<String> fields) {
+        var query = new Query();
+        if (movieInfoId != null) {
+            query.addCriteria(Criteria.where("movieInfoId").is(movieInfoId));
+        }
+        return find(project(query, fields), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findPage(Long movieInfoId, String afterId, int limit, List<String> fields) {
+        // keyset over _id, optionally within one movie, so deep pages cost the same as the first one
+        var query = new Query()
+                .with(Sort.by(Sort.Direction.ASC, "reviewId"))
+                .limit(limit);
+        if (movieInfoId != null) {
+            query.addCriteria(Criteria.where("movieInfoId").is(movieInfoId));
+        }
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("reviewId").gt(afterId));
+        }
+        return find(project(query, fields), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findByMovieInfoIds(List<Long> movieInfoIds, Integer perMovieLimit, List<String> fields) {
+        var sort = Sort.by(Sort.Direction.ASC, "movieInfoId").and(Sort.by(Sort.Direction.ASC, "reviewId"));
+        if (perMovieLimit == null) {
+            // one $in query, walked in index order
+            var query = Query.query(Criteria.where("movieInfoId").in(movieInfoIds))
+                    .with(sort);
+            return find(project(query, fields), Review.class);
+        }
+        // a capped read per movie on the movieInfoId_id index, so each one stops after
+        // perMovieLimit entries however many reviews the movie has; a $group over all of them
+        // would buffer every review of every movie before cutting. Bounded concurrency, emitted
+        // in request order
+        return Flux.fromIterable(movieInfoIds)
+                .flatMapSequential(movieInfoId -> find(
+                        project(Query.query(Criteria.where("movieInfoId").is(movieInfoId))
+                                .with(sort)
+                                .limit(perMovieLimit), fields), Review.class), 8);
+    }
+
+    // the remaining budget of the request becomes the maxTime of the query, so Mongo stops
+    // working on a query once nobody is waiting for its result
+    private Flux<Review> find(Query query, Class<Review> entityClass) {
+        return Flux.deferContextual(context -> {
+            MongoDeadline.maxTime(context).ifPresent(query::maxTime);
+            return reactiveMongoTemplate.find(query, entityClass);
+        }).onErrorMap(MongoDeadline::isMaxTimeExceeded,
+                ex -> new DeadlineExceededException("Review query ran out of time : " + ex.getMessage()));
+    }
+
+    // excluded fields are neither read from disk nor sent over the wire by Mongo
+    private static Query project(Query query, List<String> fields) {
+        if (fields != null) {
+            fields.forEach(field -> query.fields().include(field));
+        }
+        return query;
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<Review> reviews) {
+        var writes = new ArrayList<WriteModel<Document>>(reviews.size());
+        for (var review : reviews) {
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(review, document);
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document,
+                    new ReplaceOptions().upsert(true)));
+        }
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(writes, new BulkWriteOptions().ordered(false))))
+                .then();
+    }
+
+    @Override
+    public Mono<Review> updateCommentAndRating(String reviewId, String comment, Double rating) {
+        // the previous version is returned so the caller can adjust the rating stats
+        var update = new Update()
+                .set("comment", comment)
+                .set("rating", rating)
+                .inc("version", 1);
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("reviewId").is(reviewId)), update,
+                FindAndModifyOptions.options().returnNew(false), Review.class);
+    }
+
+    @Override
+    public Mono<Review> findAndRemoveById(String reviewId) {
+        return reactiveMongoTemplate.findAndRemove(Query.query(Criteria.where("reviewId").is(reviewId)), Review.class);
+    }
+}
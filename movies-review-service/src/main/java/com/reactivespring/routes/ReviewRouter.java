@@ -18,6 +18,9 @@ public class ReviewRouter {
                 .nest(path("/v1/reviews"), builder ->{
                         builder
                         .GET("", reviewsHandler::getReviews)
+                                .GET("/stats", reviewsHandler::getReviewStats)
+                                .POST("/stats/rebuild", reviewsHandler::rebuildReviewStats)
+                                .GET("/leaderboard", reviewsHandler::getLeaderboard)
                                 .POST("", reviewsHandler::addReview)
                                 .PUT("/{id}", reviewsHandler::updateReview)
                                 .DELETE("/{id}", reviewsHandler::deleteReview);})
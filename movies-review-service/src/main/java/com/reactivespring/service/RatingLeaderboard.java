@@ -0,0 +1,150 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.LeaderboardEntry;
+import com.reactivespring.domain.ReviewStats;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Top movies by average rating among those with at least {@code minReviews} rated reviews.
+ * ReviewStatsService feeds every stats document it writes into {@link #update(ReviewStats)},
+ * so the board follows reviews as they come in and a read only walks the board itself.
+ * <p>
+ * The board keeps twice {@code size} entries: when a ranked movie drops out, a movie that was
+ * not tracked may deserve its place, and the reserve usually already holds it. What the
+ * reserve misses, and writes made through other instances, are corrected by a periodic
+ * reconciliation against the stats collection.
+ */
+@Component
+@Slf4j
+public class RatingLeaderboard {
+
+    private static final Comparator<LeaderboardEntry> RANKING = Comparator
+            .comparingDouble(LeaderboardEntry::getAverage).reversed()
+            .thenComparing(Comparator.comparingLong(LeaderboardEntry::getCount).reversed())
+            .thenComparing(LeaderboardEntry::getMovieInfoId);
+
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${reviews.leaderboard.size:100}")
+    private int size;
+
+    @Value("${reviews.leaderboard.minReviews:5}")
+    private long minReviews;
+
+    @Value("${reviews.leaderboard.reconcileInterval:5m}")
+    private Duration reconcileInterval;
+
+    // guarded by this
+    private TreeSet<LeaderboardEntry> ranked = new TreeSet<>(RANKING);
+    private Map<Long, LeaderboardEntry> byMovie = new HashMap<>();
+
+    private Disposable reconciler;
+
+    public RatingLeaderboard(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        reconciler = Flux.interval(Duration.ZERO, reconcileInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> reconcile()
+                        .onErrorResume(ex -> {
+                            log.error("Leaderboard reconciliation failed : {}", ex.getMessage(), ex);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reconciler != null) {
+            reconciler.dispose();
+        }
+    }
+
+    public synchronized void update(ReviewStats stats) {
+        var previous = byMovie.remove(stats.getMovieInfoId());
+        if (previous != null) {
+            ranked.remove(previous);
+        }
+        if (stats.getCount() < minReviews || stats.getAverage() == null) {
+            return;
+        }
+        var entry = new LeaderboardEntry(stats.getMovieInfoId(), stats.getAverage(), stats.getCount());
+        ranked.add(entry);
+        byMovie.put(entry.getMovieInfoId(), entry);
+        if (ranked.size() > capacity()) {
+            byMovie.remove(ranked.pollLast().getMovieInfoId());
+        }
+    }
+
+    public synchronized List<LeaderboardEntry> top(int limit) {
+        var top = new ArrayList<LeaderboardEntry>(Math.min(limit, size));
+        for (var entry : ranked) {
+            if (top.size() == Math.min(limit, size)) {
+                break;
+            }
+            top.add(entry);
+        }
+        return top;
+    }
+
+    /**
+     * Replaces the board with the best movies according to the stats collection. The sort
+     * and limit run inside Mongo, over one document per movie rather than over the reviews.
+     */
+    public Mono<Void> reconcile() {
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("count").gte(minReviews)),
+                Aggregation.project("count")
+                        .and("movieInfoId").as("movieInfoId")
+                        .and(ArithmeticOperators.Divide.valueOf("sum").divideBy("count")).as("average"),
+                Aggregation.sort(Sort.by(Sort.Order.desc("average"), Sort.Order.desc("count"), Sort.Order.asc("movieInfoId"))),
+                Aggregation.limit(capacity()));
+        return reactiveMongoTemplate.aggregate(aggregation, ReviewStats.class, Document.class)
+                .map(document -> new LeaderboardEntry(((Number) document.get("movieInfoId")).longValue(),
+                        ((Number) document.get("average")).doubleValue(), ((Number) document.get("count")).longValue()))
+                .collectList()
+                .doOnNext(this::replace)
+                .then();
+    }
+
+    private synchronized void replace(List<LeaderboardEntry> entries) {
+        var rebuiltRanked = new TreeSet<>(RANKING);
+        var rebuiltByMovie = new HashMap<Long, LeaderboardEntry>();
+        for (var entry : entries) {
+            rebuiltRanked.add(entry);
+            rebuiltByMovie.put(entry.getMovieInfoId(), entry);
+        }
+        ranked = rebuiltRanked;
+        byMovie = rebuiltByMovie;
+        log.debug("Leaderboard reconciled with {} entries", entries.size());
+    }
+
+    private int capacity() {
+        return size * 2;
+    }
+}
@@ -0,0 +1,230 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.repository.ReviewStatsRepository;
+import com.reactivespring.util.MongoDeadline;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AddFieldsOperation;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps one {@link ReviewStats} document per movie in step with the reviews collection using
+ * atomic $inc/$min/$max upserts, so reading the rating of a movie never touches its reviews.
+ */
+@Service
+@Slf4j
+public class ReviewStatsService {
+
+    private ReviewStatsRepository reviewStatsRepository;
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    private RatingLeaderboard ratingLeaderboard;
+
+    // incremental writes made while a rebuild runs, guarded by this; each rebuild replays its own
+    // once $out has replaced the collection they were applied to
+    private final List<List<Map.Entry<Long, Update>>> writesDuringRebuilds = new ArrayList<>();
+
+    public ReviewStatsService(ReviewStatsRepository reviewStatsRepository, ReactiveMongoTemplate reactiveMongoTemplate,
+                              RatingLeaderboard ratingLeaderboard) {
+        this.reviewStatsRepository = reviewStatsRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.ratingLeaderboard = ratingLeaderboard;
+    }
+
+    public Mono<ReviewStats> getStats(Long movieInfoId) {
+        // movies whose reviews predate the stats collection are aggregated on the spot
+        return reviewStatsRepository.findById(movieInfoId)
+                .switchIfEmpty(aggregateStats(movieInfoId))
+                .defaultIfEmpty(new ReviewStats(movieInfoId, 0, 0, null, null, new HashMap<>(), 0L));
+    }
+
+    public Flux<ReviewStats> recordAdded(List<Review> reviews) {
+        // one update per movie, however many of its reviews are in the batch; movies whose new
+        // reviews carry no rating still get their version bumped
+        var ratingsByMovie = reviews.stream()
+                .collect(Collectors.groupingBy(Review::getMovieInfoId,
+                        Collectors.mapping(Review::getRating, Collectors.filtering(Objects::nonNull, Collectors.toList()))));
+        return Flux.fromIterable(ratingsByMovie.entrySet())
+                .concatMap(entry -> applyAdded(entry.getKey(), entry.getValue()));
+    }
+
+    public Mono<ReviewStats> recordAdded(Review review) {
+        if (review.getRating() == null) {
+            return findAndModify(review.getMovieInfoId(), new Update());
+        }
+        return applyAdded(review.getMovieInfoId(), List.of(review.getRating()));
+    }
+
+    public Mono<ReviewStats> recordRemoved(Review review) {
+        var rating = review.getRating();
+        if (rating == null) {
+            return findAndModify(review.getMovieInfoId(), new Update());
+        }
+        var update = new Update()
+                .inc("count", -1)
+                .inc("sum", -rating)
+                .inc("histogram." + bucket(rating), -1);
+        return findAndModify(review.getMovieInfoId(), update)
+                .flatMap(stats -> {
+                    // min and max cannot be decremented, they are only recomputed when the removed
+                    // rating was one of the bounds
+                    var onBound = Objects.equals(stats.getMin(), rating) || Objects.equals(stats.getMax(), rating);
+                    return stats.getCount() <= 0 || onBound ? refreshBounds(review.getMovieInfoId()) : Mono.just(stats);
+                });
+    }
+
+    public Mono<ReviewStats> recordUpdated(Review before, Review after) {
+        if (Objects.equals(before.getRating(), after.getRating())
+                && Objects.equals(before.getMovieInfoId(), after.getMovieInfoId())) {
+            // the counts are unchanged but the review list is not, which the version has to show
+            return findAndModify(after.getMovieInfoId(), new Update());
+        }
+        return recordRemoved(before)
+                .then(recordAdded(after));
+    }
+
+    /**
+     * Recomputes every stats document from the reviews collection. The aggregation ends in $out,
+     * which replaces the stats collection in one step once the new content is complete.
+     * <p>
+     * The $inc upserts made while the aggregation runs land in the collection $out replaces, so
+     * they are recorded and applied again afterwards. A review written while the aggregation
+     * reads it may be counted twice until the next rebuild, since the aggregation may already
+     * have seen the review whose write is replayed on top.
+     */
+    public Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+            var writes = new ArrayList<Map.Entry<Long, Update>>();
+            synchronized (this) {
+                writesDuringRebuilds.add(writes);
+            }
+            var pipeline = new ArrayList<>(statsPipeline(Criteria.where("rating").ne(null)));
+            // rebuilt documents must not reuse versions handed out before, a timestamp is larger than
+            // any counter reached by increments
+            pipeline.add(AddFieldsOperation.addField("version").withValue(System.currentTimeMillis()).build());
+            pipeline.add(Aggregation.out(reactiveMongoTemplate.getCollectionName(ReviewStats.class)));
+            return reactiveMongoTemplate.aggregate(Aggregation.newAggregation(pipeline), Review.class, Document.class)
+                    .then(Mono.defer(() -> {
+                        List<Map.Entry<Long, Update>> replayed;
+                        synchronized (this) {
+                            writesDuringRebuilds.remove(writes);
+                            replayed = List.copyOf(writes);
+                        }
+                        log.info("Rebuilt review stats, replaying {} writes made during the rebuild", replayed.size());
+                        return Flux.fromIterable(replayed)
+                                .concatMap(write -> upsert(write.getKey(), write.getValue()))
+                                .then();
+                    }))
+                    .doFinally(signalType -> {
+                        synchronized (this) {
+                            writesDuringRebuilds.remove(writes);
+                        }
+                    });
+        }).then(ratingLeaderboard.reconcile());
+    }
+
+    private Mono<ReviewStats> applyAdded(Long movieInfoId, List<Double> ratings) {
+        if (ratings.isEmpty()) {
+            return findAndModify(movieInfoId, new Update());
+        }
+        var update = new Update()
+                .inc("count", ratings.size())
+                .inc("sum", ratings.stream().mapToDouble(Double::doubleValue).sum())
+                .min("min", ratings.stream().min(Double::compare).orElseThrow())
+                .max("max", ratings.stream().max(Double::compare).orElseThrow());
+        ratings.stream()
+                .collect(Collectors.groupingBy(ReviewStatsService::bucket, Collectors.counting()))
+                .forEach((bucket, count) -> update.inc("histogram." + bucket, count));
+        return findAndModify(movieInfoId, update);
+    }
+
+    private Mono<ReviewStats> aggregateStats(Long movieInfoId) {
+        var pipeline = statsPipeline(Criteria.where("movieInfoId").is(movieInfoId).and("rating").ne(null));
+        // runs on the request path when a movie has no stats document yet, so it gets the
+        // request's remaining budget as its maxTime
+        return Mono.deferContextual(context -> {
+            var aggregation = MongoDeadline.maxTime(context)
+                    .map(maxTime -> Aggregation.newAggregation(pipeline)
+                            .withOptions(AggregationOptions.builder().maxTime(maxTime).build()))
+                    .orElseGet(() -> Aggregation.newAggregation(pipeline));
+            return reactiveMongoTemplate.aggregate(aggregation, Review.class, ReviewStats.class)
+                    .next();
+        }).onErrorMap(MongoDeadline::isMaxTimeExceeded,
+                ex -> new DeadlineExceededException("Review stats aggregation ran out of time : " + ex.getMessage()));
+    }
+
+    private Mono<ReviewStats> refreshBounds(Long movieInfoId) {
+        return aggregateStats(movieInfoId)
+                .map(stats -> new Update().set("min", stats.getMin()).set("max", stats.getMax()))
+                .defaultIfEmpty(new Update().unset("min").unset("max"))
+                .flatMap(update -> findAndModify(movieInfoId, update));
+    }
+
+    private Mono<ReviewStats> findAndModify(Long movieInfoId, Update update) {
+        // every stats write goes through here, so this is where the version is bumped, writes are
+        // recorded for a running rebuild and the leaderboard is kept current
+        var versioned = update.inc("version", 1);
+        return upsert(movieInfoId, versioned)
+                .doOnNext(stats -> record(movieInfoId, versioned));
+    }
+
+    private Mono<ReviewStats> upsert(Long movieInfoId, Update update) {
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("movieInfoId").is(movieInfoId)), update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), ReviewStats.class)
+                .doOnNext(ratingLeaderboard::update);
+    }
+
+    private synchronized void record(Long movieInfoId, Update update) {
+        writesDuringRebuilds.forEach(writes -> writes.add(Map.entry(movieInfoId, update)));
+    }
+
+    private static List<AggregationOperation> statsPipeline(Criteria criteria) {
+        // the same key as bucket(rating): $substr turns the floored number into "9" for 9.5, and
+        // unlike $toString/$toLong (MongoDB 4.0+) it runs on every server version we support
+        AggregationExpression bucket = context -> new Document("$substr",
+                List.of(new Document("$floor", "$rating"), 0, -1));
+        AggregationExpression histogramEntry = context -> new Document("k", "$_id.bucket")
+                .append("v", "$count");
+        AggregationExpression histogram = context -> new Document("$arrayToObject", "$histogram");
+
+        return List.of(
+                Aggregation.match(criteria),
+                Aggregation.project("movieInfoId", "rating").and(bucket).as("bucket"),
+                Aggregation.group("movieInfoId", "bucket")
+                        .count().as("count")
+                        .sum("rating").as("sum")
+                        .min("rating").as("min")
+                        .max("rating").as("max"),
+                Aggregation.group("_id.movieInfoId")
+                        .sum("count").as("count")
+                        .sum("sum").as("sum")
+                        .min("min").as("min")
+                        .max("max").as("max")
+                        .push(histogramEntry).as("histogram"),
+                Aggregation.project("count", "sum", "min", "max").and(histogram).as("histogram"));
+    }
+
+    static String bucket(Double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+}
@@ -0,0 +1,194 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Optional write-behind for new reviews: accepted reviews are queued in a bounded buffer and
+ * written with one bulk insert once {@code batchSize} reviews are waiting or
+ * {@code flushInterval} has passed, whichever comes first. A full buffer rejects the review
+ * instead of queueing unbounded work. Whatever is still buffered is written on shutdown.
+ * <p>
+ * Buffered reviews were already answered with 202, so a batch whose write still fails after
+ * the retries is kept and written again every {@code redeliveryDelay} until it succeeds; no
+ * other batch is written meanwhile, so the buffer fills up and rejects new reviews instead of
+ * piling up more unwritten ones. The {@code reviews.writebehind.unwritten} gauge stays above
+ * zero for as long as that lasts and is the one to alert on.
+ */
+@Component
+@Slf4j
+public class ReviewWriteBehindBuffer {
+
+    private ReviewReactiveRepository reviewReactiveRepository;
+    private ReviewStatsService reviewStatsService;
+    private MeterRegistry meterRegistry;
+
+    @Value("${reviews.writeBehind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${reviews.writeBehind.capacity:10000}")
+    private int capacity;
+
+    @Value("${reviews.writeBehind.batchSize:500}")
+    private int batchSize;
+
+    @Value("${reviews.writeBehind.flushInterval:100ms}")
+    private Duration flushInterval;
+
+    @Value("${reviews.writeBehind.drainTimeout:10s}")
+    private Duration drainTimeout;
+
+    @Value("${reviews.writeBehind.redeliveryDelay:1s}")
+    private Duration redeliveryDelay;
+
+    private BlockingQueue<Review> queue;
+    private volatile boolean accepting;
+    private final Sinks.Many<Long> flushRequests = Sinks.many().multicast().directBestEffort();
+    private final Sinks.Empty<Void> shutdown = Sinks.empty();
+    private CompletableFuture<Void> flusherDone;
+
+    // taken from the queue but not written yet; only touched by the one running flush
+    private volatile List<Review> unwritten = List.of();
+    private long redeliverAt;
+
+    private Timer flushTimer;
+    private Counter rejectedCounter;
+    private Counter failedCounter;
+
+    public ReviewWriteBehindBuffer(ReviewReactiveRepository reviewReactiveRepository, ReviewStatsService reviewStatsService,
+                                   MeterRegistry meterRegistry) {
+        this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStatsService = reviewStatsService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        Gauge.builder("reviews.writebehind.depth", queue, BlockingQueue::size)
+                .register(meterRegistry);
+        flushTimer = Timer.builder("reviews.writebehind.flush")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("reviews.writebehind.rejected")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("reviews.writebehind.failed")
+                .register(meterRegistry);
+        Gauge.builder("reviews.writebehind.unwritten", this, buffer -> buffer.unwritten.size())
+                .register(meterRegistry);
+
+        // flushes run one at a time; ticks arriving while one is running are dropped because
+        // the running flush keeps going as long as full batches are waiting
+        flusherDone = Flux.merge(Flux.interval(flushInterval), flushRequests.asFlux())
+                .takeUntilOther(shutdown.asMono())
+                .onBackpressureDrop()
+                .concatMap(tick -> flushBatch().repeat(() -> unwritten.isEmpty() && queue.size() >= batchSize), 1)
+                .then()
+                .toFuture();
+        accepting = true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return false when the review was not buffered because the buffer is full or shutting down
+     */
+    public boolean offer(Review review) {
+        if (!accepting || !queue.offer(review)) {
+            rejectedCounter.increment();
+            return false;
+        }
+        if (queue.size() >= batchSize) {
+            flushRequests.tryEmitNext(0L);
+        }
+        return true;
+    }
+
+    private Mono<Void> flushBatch() {
+        return Mono.defer(() -> {
+            var batch = unwritten;
+            if (!batch.isEmpty()) {
+                // on shutdown the batch is retried right away until drainTimeout runs out
+                if (accepting && System.nanoTime() - redeliverAt < 0) {
+                    return Mono.empty();
+                }
+            } else {
+                batch = new ArrayList<>(batchSize);
+                queue.drainTo(batch, batchSize);
+                if (batch.isEmpty()) {
+                    return Mono.empty();
+                }
+                unwritten = batch;
+            }
+            var written = batch;
+            var sample = Timer.start(meterRegistry);
+            return reviewReactiveRepository.upsertAll(written)
+                    .retryWhen(Retry.backoff(3, Duration.ofMillis(100)))
+                    .doOnSuccess(unused -> {
+                        sample.stop(flushTimer);
+                        unwritten = List.of();
+                    })
+                    // the reviews are stored by now, a stats failure must not write them again
+                    .then(Mono.defer(() -> reviewStatsService.recordAdded(written).then()
+                            .onErrorResume(ex -> {
+                                log.error("Review stats not updated for flushed batch : {}", ex.getMessage(), ex);
+                                return Mono.empty();
+                            })))
+                    // upserts are idempotent, so writing the whole batch again is safe
+                    .onErrorResume(ex -> {
+                        log.error("Flush of {} buffered reviews failed, writing them again in {} : {}",
+                                written.size(), redeliveryDelay, ex.getMessage(), ex);
+                        failedCounter.increment(written.size());
+                        redeliverAt = System.nanoTime() + redeliveryDelay.toNanos();
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    @PreDestroy
+    void drain() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        accepting = false;
+        shutdown.tryEmitEmpty();
+        flusherDone.get(drainTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Draining {} buffered reviews", queue.size() + unwritten.size());
+        try {
+            flushBatch()
+                    .repeat(() -> !queue.isEmpty() || !unwritten.isEmpty())
+                    .blockLast(drainTimeout);
+        } catch (IllegalStateException ex) {
+            // the ids are logged so the reviews can be recovered by hand
+            log.error("Shutting down with {} accepted reviews not written, unwritten batch : {}",
+                    queue.size() + unwritten.size(),
+                    unwritten.stream().map(Review::getReviewId).collect(Collectors.toList()));
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package com.reactivespring.routes;
 
 
+import com.reactivespring.domain.CursorPage;
 import com.reactivespring.domain.Review;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
@@ -28,6 +31,9 @@ public class ReviewsIntgTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
     static String REVIEWS_URL = "/v1/reviews";
 
     @BeforeEach
@@ -45,6 +51,8 @@ public class ReviewsIntgTest {
     void tearDown() {
         reviewReactiveRepository.deleteAll()
                 .block();
+        reviewStatsRepository.deleteAll()
+                .block();
     }
 
     @Test
@@ -82,6 +90,113 @@ public class ReviewsIntgTest {
         });
     }
 
+    @Test
+    public void getReviewsForMovies(){
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=2,1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(3, reviews.size());
+                    assertEquals(1L, reviews.get(0).getMovieInfoId());
+                    assertEquals(1L, reviews.get(1).getMovieInfoId());
+                    assertEquals(2L, reviews.get(2).getMovieInfoId());
+                });
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=2,1&perMovieLimit=1&fields=movieInfoId,rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals(2L, reviews.get(0).getMovieInfoId());
+                    assertEquals(1L, reviews.get(1).getMovieInfoId());
+                    assertNotNull(reviews.get(1).getReviewId());
+                    assertEquals(9.0, reviews.get(1).getRating());
+                });
+    }
+
+    @Test
+    public void getReviews_withFields(){
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&fields=rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].reviewId").exists()
+                .jsonPath("$[0].rating").exists()
+                .jsonPath("$[0].comment").doesNotExist();
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?fields=unknown")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    public void getReviewStats(){
+
+        webTestClient.post().uri(REVIEWS_URL).bodyValue(new Review(null, 3L, "Awesome Movie", 9.0))
+                .exchange().expectStatus().isCreated();
+        webTestClient.post().uri(REVIEWS_URL).bodyValue(new Review(null, 3L, "Good Movie", 7.5))
+                .exchange().expectStatus().isCreated();
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(8.25)
+                .jsonPath("$.min").isEqualTo(7.5)
+                .jsonPath("$.max").isEqualTo(9.0)
+                .jsonPath("$.histogram.7").isEqualTo(1)
+                .jsonPath("$.histogram.9").isEqualTo(1);
+    }
+
+    @Test
+    public void getReviewsPage(){
+
+        var firstPage = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(new ParameterizedTypeReference<CursorPage<Review>>() {})
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(firstPage);
+        assertEquals(2, firstPage.getItems().size());
+        assertNotNull(firstPage.getNextCursor());
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=2&cursor={cursor}", firstPage.getNextCursor())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.nextCursor").doesNotExist();
+    }
+
     @Test
     public void updateReview(){
         //given
@@ -107,4 +222,36 @@ public class ReviewsIntgTest {
                     assertEquals("Not an Awesome Movie", updatedReview.getComment());
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void updateReview_invalidRating(){
+        //given
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        var savedReview = reviewReactiveRepository.save(review).block();
+        var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", -8.0);
+        //when
+        assert savedReview != null;
+
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL+"/{id}", savedReview.getReviewId())
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        //then
+        var storedReview = reviewReactiveRepository.findById(savedReview.getReviewId()).block();
+        assert storedReview != null;
+        assertEquals(9.0, storedReview.getRating());
+    }
+
+    @Test
+    public void deleteReview_notFound(){
+
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URL+"/{id}", "def")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
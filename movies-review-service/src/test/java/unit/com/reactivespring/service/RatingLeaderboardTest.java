@@ -0,0 +1,57 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.LeaderboardEntry;
+import com.reactivespring.domain.ReviewStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RatingLeaderboardTest {
+
+    RatingLeaderboard ratingLeaderboard = new RatingLeaderboard(null);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(ratingLeaderboard, "size", 2);
+        ReflectionTestUtils.setField(ratingLeaderboard, "minReviews", 2L);
+    }
+
+    @Test
+    void ranksByAverageAndSkipsMoviesWithTooFewReviews() {
+
+        ratingLeaderboard.update(stats(1L, 2, 16.0));
+        ratingLeaderboard.update(stats(2L, 3, 27.0));
+        ratingLeaderboard.update(stats(3L, 1, 10.0));
+        ratingLeaderboard.update(stats(4L, 2, 14.0));
+
+        assertEquals(List.of(2L, 1L), ids(ratingLeaderboard.top(10)));
+        assertEquals(List.of(2L), ids(ratingLeaderboard.top(1)));
+    }
+
+    @Test
+    void updateMovesAMovieAndReserveFillsTheGap() {
+
+        ratingLeaderboard.update(stats(1L, 2, 16.0));
+        ratingLeaderboard.update(stats(2L, 3, 27.0));
+        ratingLeaderboard.update(stats(4L, 2, 14.0));
+
+        // movie 2 drops below the others, movie 4 moves up from the reserve
+        ratingLeaderboard.update(stats(2L, 4, 26.0));
+
+        assertEquals(List.of(1L, 4L), ids(ratingLeaderboard.top(10)));
+    }
+
+    private static ReviewStats stats(Long movieInfoId, long count, double sum) {
+        return new ReviewStats(movieInfoId, count, sum, null, null, Map.of(), 1L);
+    }
+
+    private static List<Long> ids(List<LeaderboardEntry> entries) {
+        return entries.stream().map(LeaderboardEntry::getMovieInfoId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,64 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewStatsRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.publisher.TestPublisher;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewStatsServiceTest {
+
+    ReactiveMongoTemplate reactiveMongoTemplateMock = mock(ReactiveMongoTemplate.class);
+
+    RatingLeaderboard ratingLeaderboardMock = mock(RatingLeaderboard.class);
+
+    ReviewStatsService reviewStatsService = new ReviewStatsService(mock(ReviewStatsRepository.class),
+            reactiveMongoTemplateMock, ratingLeaderboardMock);
+
+    @Test
+    void writeDuringRebuildIsReplayedAfterOut() {
+
+        TestPublisher<Document> aggregation = TestPublisher.create();
+        when(reactiveMongoTemplateMock.getCollectionName(ReviewStats.class)).thenReturn("reviewStats");
+        when(reactiveMongoTemplateMock.aggregate(any(Aggregation.class), eq(Review.class), eq(Document.class)))
+                .thenReturn(aggregation.flux());
+        when(reactiveMongoTemplateMock.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ReviewStats.class)))
+                .thenReturn(Mono.just(new ReviewStats(1L, 1, 9.0, 9.0, 9.0, new HashMap<>(), 1L)));
+        when(ratingLeaderboardMock.reconcile()).thenReturn(Mono.empty());
+        reviewStatsService.rebuild().subscribe();
+
+        // the $inc lands in the collection that $out is about to replace
+        reviewStatsService.recordAdded(new Review("1", 1L, "Awesome Movie", 9.5)).block();
+        aggregation.complete();
+
+        var updates = ArgumentCaptor.forClass(Update.class);
+        verify(reactiveMongoTemplateMock, times(2)).findAndModify(any(Query.class), updates.capture(),
+                any(FindAndModifyOptions.class), eq(ReviewStats.class));
+        assertEquals(updates.getAllValues().get(0), updates.getAllValues().get(1));
+        assertTrue(updates.getAllValues().get(1).modifies("histogram.9"));
+
+        // once replayed, later writes are not recorded again
+        reviewStatsService.recordAdded(new Review("2", 1L, "Awesome Movie", 8.0)).block();
+        verify(reactiveMongoTemplateMock, times(3)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(ReviewStats.class));
+    }
+}
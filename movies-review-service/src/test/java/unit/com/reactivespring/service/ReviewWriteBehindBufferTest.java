@@ -0,0 +1,129 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewWriteBehindBufferTest {
+
+    ReviewReactiveRepository reviewReactiveRepositoryMock = mock(ReviewReactiveRepository.class);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    List<List<Review>> flushedBatches = new CopyOnWriteArrayList<>();
+
+    ReviewStatsService reviewStatsServiceMock = mock(ReviewStatsService.class);
+
+    ReviewWriteBehindBuffer buffer = new ReviewWriteBehindBuffer(reviewReactiveRepositoryMock, reviewStatsServiceMock, meterRegistry);
+
+    @BeforeEach
+    void setUp() {
+        when(reviewReactiveRepositoryMock.upsertAll(anyList())).thenAnswer(invocation -> {
+            flushedBatches.add(List.copyOf(invocation.getArgument(0)));
+            return Mono.empty();
+        });
+        when(reviewStatsServiceMock.recordAdded(anyList())).thenReturn(Flux.empty());
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "capacity", 3);
+        ReflectionTestUtils.setField(buffer, "batchSize", 2);
+        ReflectionTestUtils.setField(buffer, "flushInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(buffer, "drainTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(buffer, "redeliveryDelay", Duration.ofHours(1));
+        buffer.start();
+    }
+
+    @Test
+    void flushesWhenBatchIsFull() throws InterruptedException {
+
+        assertTrue(buffer.offer(new Review("1", 1L, "Awesome Movie", 9.0)));
+        assertTrue(buffer.offer(new Review("2", 1L, "Awesome Movie1", 9.0)));
+
+        for (int i = 0; i < 50 && flushedBatches.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, flushedBatches.size());
+        assertEquals(2, flushedBatches.get(0).size());
+    }
+
+    @Test
+    void rejectsWhenFullAndDrainsOnShutdown() throws Exception {
+
+        ReflectionTestUtils.setField(buffer, "batchSize", 10);
+
+        assertTrue(buffer.offer(new Review("1", 1L, "Awesome Movie", 9.0)));
+        assertTrue(buffer.offer(new Review("2", 1L, "Awesome Movie1", 9.0)));
+        assertTrue(buffer.offer(new Review("3", 2L, "Excellent Movie", 8.0)));
+        assertFalse(buffer.offer(new Review("4", 2L, "Excellent Movie", 8.0)));
+        assertEquals(1.0, meterRegistry.get("reviews.writebehind.rejected").counter().count());
+
+        buffer.drain();
+
+        assertEquals(3, flushedBatches.stream().mapToInt(List::size).sum());
+        assertFalse(buffer.offer(new Review("5", 2L, "Excellent Movie", 8.0)));
+    }
+
+    @Test
+    void failedBatchIsKeptAndWrittenAgain() throws Exception {
+
+        var attempts = new AtomicInteger();
+        // fails the first flush with all of its retries
+        when(reviewReactiveRepositoryMock.upsertAll(anyList())).thenAnswer(invocation -> {
+            if (attempts.incrementAndGet() <= 4) {
+                return Mono.error(new IllegalStateException("Mongo is down"));
+            }
+            flushedBatches.add(List.copyOf(invocation.getArgument(0)));
+            return Mono.empty();
+        });
+        // stubbing called the answer from setUp once
+        flushedBatches.clear();
+
+        assertTrue(buffer.offer(new Review("1", 1L, "Awesome Movie", 9.0)));
+        assertTrue(buffer.offer(new Review("2", 1L, "Awesome Movie1", 9.0)));
+
+        for (int i = 0; i < 300 && meterRegistry.get("reviews.writebehind.failed").counter().count() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2.0, meterRegistry.get("reviews.writebehind.unwritten").gauge().value());
+        verify(reviewStatsServiceMock, never()).recordAdded(anyList());
+
+        buffer.drain();
+
+        assertEquals(List.of("1", "2"), flushedBatches.get(0).stream().map(Review::getReviewId).collect(Collectors.toList()));
+        assertEquals(0.0, meterRegistry.get("reviews.writebehind.unwritten").gauge().value());
+        verify(reviewStatsServiceMock, times(1)).recordAdded(anyList());
+    }
+
+    @Test
+    void statsFailureDoesNotWriteTheBatchAgain() throws Exception {
+
+        when(reviewStatsServiceMock.recordAdded(anyList())).thenReturn(Flux.error(new IllegalStateException("stats down")));
+
+        assertTrue(buffer.offer(new Review("1", 1L, "Awesome Movie", 9.0)));
+        buffer.drain();
+
+        assertEquals(1, flushedBatches.size());
+        assertEquals(0.0, meterRegistry.get("reviews.writebehind.failed").counter().count());
+        assertEquals(0.0, meterRegistry.get("reviews.writebehind.unwritten").gauge().value());
+    }
+}
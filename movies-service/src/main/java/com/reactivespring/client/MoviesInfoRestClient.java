@@ -1,42 +1,186 @@
 package com.reactivespring.client;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.DeadlineExceededException;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.AsyncLookupCache;
+import com.reactivespring.util.HedgeBudget;
+import com.reactivespring.util.LoadBalancer;
+import com.reactivespring.util.MicroBatcher;
+import com.reactivespring.util.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
 @Component
 @Slf4j
 public class MoviesInfoRestClient {
 
+    /**
+     * A movie info lookup: the id plus the fields to project, null for the whole document.
+     * Projections are cached and batched separately from full lookups.
+     */
+    @Data
+    @AllArgsConstructor
+    private static class MovieInfoKey {
+        private final String movieId;
+        private final String fields;
+    }
+
     private WebClient webClient;
+    private MeterRegistry meterRegistry;
+    private AsyncLookupCache<MovieInfoKey, MovieInfo> movieInfoCache;
+    private MicroBatcher<MovieInfoKey, MovieInfo> movieInfoBatcher;
+    private HedgeBudget hedgeBudget;
+    private RequestHedger movieInfoHedger;
+    private RequestHedger movieInfoBatchHedger;
+    private LoadBalancer loadBalancer;
 
+    // a comma separated list of instances to balance across
     @Value("${restClient.moviesInfoUrl}")
-    private String moviesInfoUrl;
+    private List<String> moviesInfoUrls;
+
+    @Value("${restClient.cache.movieInfo.maximumSize:10000}")
+    private long cacheMaximumSize;
+
+    @Value("${restClient.cache.movieInfo.ttl:10m}")
+    private Duration cacheTtl;
+
+    @Value("${restClient.cache.movieInfo.refreshAfter:1m}")
+    private Duration cacheRefreshAfter;
+
+    @Value("${restClient.cache.movieInfo.negativeTtl:30s}")
+    private Duration cacheNegativeTtl;
+
+    @Value("${restClient.batching.enabled:false}")
+    private boolean batchingEnabled;
+
+    @Value("${restClient.batching.window:5ms}")
+    private Duration batchingWindow;
+
+    @Value("${restClient.batching.maxBatchSize:100}")
+    private int batchingMaxBatchSize;
+
+    @Value("${restClient.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${restClient.hedging.percentile:0.95}")
+    private double hedgingPercentile;
+
+    @Value("${restClient.hedging.minDelay:5ms}")
+    private Duration hedgingMinDelay;
+
+    @Value("${restClient.hedging.reservoirSize:512}")
+    private int hedgingReservoirSize;
+
+    @Value("${restClient.loadBalancing.failureRateThreshold:0.5}")
+    private double loadBalancingFailureRateThreshold;
 
-    public MoviesInfoRestClient(WebClient webClient) {
+    @Value("${restClient.loadBalancing.windowSize:20}")
+    private int loadBalancingWindowSize;
+
+    @Value("${restClient.loadBalancing.ejectionTime:30s}")
+    private Duration loadBalancingEjectionTime;
+
+    @Value("${restClient.loadBalancing.slowStart:30s}")
+    private Duration loadBalancingSlowStart;
+
+    public MoviesInfoRestClient(WebClient webClient, MeterRegistry meterRegistry, HedgeBudget hedgeBudget) {
         this.webClient = webClient;
+        this.meterRegistry = meterRegistry;
+        this.hedgeBudget = hedgeBudget;
+    }
+
+    @PostConstruct
+    void initCache() {
+        loadBalancer = new LoadBalancer("movieInfo", moviesInfoUrls, MoviesInfoRestClient::isInstanceFailure,
+                loadBalancingFailureRateThreshold, loadBalancingWindowSize, loadBalancingEjectionTime,
+                loadBalancingSlowStart, meterRegistry);
+        movieInfoCache = new AsyncLookupCache<>("movieInfo", cacheMaximumSize, cacheTtl, cacheRefreshAfter,
+                cacheNegativeTtl, this::loadMovieInfo, meterRegistry);
+        if (batchingEnabled) {
+            movieInfoBatcher = new MicroBatcher<>("movieInfo", batchingWindow, batchingMaxBatchSize,
+                    this::fetchMovieInfos, meterRegistry);
+        }
+        if (hedgingEnabled) {
+            movieInfoHedger = new RequestHedger("movieInfo", hedgingPercentile, hedgingMinDelay, hedgingReservoirSize,
+                    hedgeBudget, meterRegistry);
+            movieInfoBatchHedger = new RequestHedger("movieInfoBatch", hedgingPercentile, hedgingMinDelay, hedgingReservoirSize,
+                    hedgeBudget, meterRegistry);
+        }
+    }
+
+    /**
+     * The movie info for the id, projected to the given fields when fields is not null.
+     */
+    public Mono<MovieInfo> retrieveMovieInfo(String movieId, List<String> fields) {
+
+        var key = new MovieInfoKey(movieId, fields == null ? null : String.join(",", fields));
+        return movieInfoCache.get(key)
+                .flatMap(movieInfo -> movieInfo.map(Mono::just)
+                        .orElseGet(() -> Mono.error(notFound(movieId))));
     }
 
-    public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+    private Mono<Optional<MovieInfo>> loadMovieInfo(MovieInfoKey key) {
+        if (movieInfoBatcher != null) {
+            // ids missing from the batch response come back empty, same as a 404
+            return movieInfoBatcher.load(key);
+        }
+        // a 404 becomes a negative cache entry, everything else fails the load and is not cached
+        return fetchMovieInfo(key.getMovieId(), key.getFields())
+                .map(Optional::of)
+                .onErrorResume(MoviesInfoRestClient::isNotFound, ex -> Mono.just(Optional.empty()));
+    }
+
+    private static boolean isNotFound(Throwable ex) {
+        return ex instanceof MoviesInfoClientException
+                && HttpStatus.NOT_FOUND.value() == ((MoviesInfoClientException) ex).getStatusCode();
+    }
+
+    // what counts against an instance's health; a 4xx is the caller's problem, not the instance's
+    private static boolean isInstanceFailure(Throwable ex) {
+        return ex instanceof MoviesInfoServerException || ex instanceof DeadlineExceededException
+                || ex instanceof WebClientRequestException;
+    }
+
+    private static MoviesInfoClientException notFound(String movieId) {
+        return new MoviesInfoClientException("There is no MovieInfo available passed in Id :" + movieId,
+                HttpStatus.NOT_FOUND.value());
+    }
 
-        var url = moviesInfoUrl.concat("/{id}");
+    private Mono<MovieInfo> fetchMovieInfo(String movieId, String fields) {
 
-        return webClient
+        return hedged(movieInfoHedger, () -> balanced(baseUrl -> webClient
                 .get()
-                .uri(url,movieId)
+                .uri(UriComponentsBuilder.fromHttpUrl(baseUrl)
+                        .path("/{id}")
+                        .queryParamIfPresent("fields", Optional.ofNullable(fields))
+                        .buildAndExpand(movieId).toUriString())
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError,clientResponse -> {
                     log.info("Status code is : {}",clientResponse.statusCode().value());
                     if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)){
-                        return Mono.error(new MoviesInfoClientException(
-                                "There is no MovieInfo available passed in Id :"+movieId
-                        ,clientResponse.statusCode().value()));
+                        return Mono.error(notFound(movieId));
                     }
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(responseMessage ->Mono.error(new MoviesInfoClientException(
@@ -53,8 +197,60 @@ public class MoviesInfoRestClient {
                             )));
                 })
 
-                .bodyToMono(MovieInfo.class)
-                .log();
+                .bodyToMono(MovieInfo.class)));
+
+    }
+
+    private Mono<Map<MovieInfoKey, MovieInfo>> fetchMovieInfos(Set<MovieInfoKey> keys) {
+
+        // one batch call per distinct projection, usually there is just one
+        var idsByFields = keys.stream()
+                .collect(Collectors.groupingBy(key -> Optional.ofNullable(key.getFields()),
+                        Collectors.mapping(MovieInfoKey::getMovieId, Collectors.toSet())));
+        return Flux.fromIterable(idsByFields.entrySet())
+                .flatMap(entry -> fetchMovieInfos(entry.getValue(), entry.getKey())
+                        .flatMapIterable(Map::values)
+                        .map(movieInfo -> Map.entry(new MovieInfoKey(movieInfo.getMovieInfoId(), entry.getKey().orElse(null)), movieInfo)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Mono<Map<String, MovieInfo>> fetchMovieInfos(Set<String> movieIds, Optional<String> fields) {
+
+        return hedged(movieInfoBatchHedger, () -> balanced(baseUrl -> webClient
+                .get()
+                .uri(UriComponentsBuilder.fromHttpUrl(baseUrl)
+                        .path("/batch")
+                        .queryParam("ids", String.join(",", movieIds))
+                        .queryParamIfPresent("fields", fields)
+                        .buildAndExpand().toUriString())
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError,clientResponse -> {
+                    log.info("Status code is : {}",clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage ->Mono.error(new MoviesInfoClientException(
+                                    responseMessage,clientResponse.statusCode().value()
+                            )));
+                })
+
+                .onStatus(HttpStatus::is5xxServerError,clientResponse -> {
+                    log.info("Status code is : {}",clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage ->Mono.error(new MoviesInfoServerException(
+                                   "Server exception in MovieInfoService"+responseMessage
+                            )));
+                })
+
+                .bodyToFlux(MovieInfo.class)
+                .collectMap(MovieInfo::getMovieInfoId)));
+    }
+
+    private <T> Mono<T> balanced(Function<String, Mono<T>> call) {
+        return loadBalancer.execute(call);
+    }
 
+    // GETs are idempotent, so a slow one may be sent a second time when hedging is enabled
+    private static <T> Mono<T> hedged(RequestHedger hedger, Supplier<Mono<T>> call) {
+        return hedger == null ? call.get() : hedger.execute(call);
     }
 }
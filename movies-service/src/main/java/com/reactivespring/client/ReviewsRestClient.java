@@ -1,36 +1,211 @@
 package com.reactivespring.client;
 
+import com.reactivespring.domain.CursorPage;
+import com.reactivespring.domain.RatingSummary;
 import com.reactivespring.domain.Review;
-import com.reactivespring.exception.MoviesInfoClientException;
-import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.DeadlineExceededException;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.AsyncLookupCache;
+import com.reactivespring.util.HedgeBudget;
+import com.reactivespring.util.LoadBalancer;
+import com.reactivespring.util.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.util.UriComponentsBuilder;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 @Component
 @Slf4j
 public class ReviewsRestClient {
+
+    private static final ParameterizedTypeReference<CursorPage<Review>> REVIEW_PAGE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
     private WebClient webClient;
+    private MeterRegistry meterRegistry;
+    private AsyncLookupCache<String, CursorPage<Review>> firstPageCache;
+    private AsyncLookupCache<String, RatingSummary> ratingSummaryCache;
+    private HedgeBudget hedgeBudget;
+    private RequestHedger reviewsHedger;
+    private RequestHedger ratingSummaryHedger;
+    private LoadBalancer loadBalancer;
 
+    // a comma separated list of instances to balance across
     @Value("${restClient.reviewsUrl}")
-    private String reviewsUrl;
+    private List<String> reviewsUrls;
+
+    @Value("${restClient.reviewsPageSize:10}")
+    private int firstPageSize;
+
+    @Value("${restClient.cache.reviews.maximumSize:10000}")
+    private long cacheMaximumSize;
+
+    @Value("${restClient.cache.reviews.ttl:2m}")
+    private Duration cacheTtl;
+
+    @Value("${restClient.cache.reviews.refreshAfter:15s}")
+    private Duration cacheRefreshAfter;
+
+    @Value("${restClient.cache.reviews.negativeTtl:5s}")
+    private Duration cacheNegativeTtl;
+
+    @Value("${restClient.cache.reviews.lastKnownGoodTtl:1h}")
+    private Duration cacheLastKnownGoodTtl;
+
+    @Value("${restClient.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${restClient.hedging.percentile:0.95}")
+    private double hedgingPercentile;
+
+    @Value("${restClient.hedging.minDelay:5ms}")
+    private Duration hedgingMinDelay;
+
+    @Value("${restClient.hedging.reservoirSize:512}")
+    private int hedgingReservoirSize;
 
-    public ReviewsRestClient(WebClient webClient) {
+    @Value("${restClient.loadBalancing.failureRateThreshold:0.5}")
+    private double loadBalancingFailureRateThreshold;
+
+    @Value("${restClient.loadBalancing.windowSize:20}")
+    private int loadBalancingWindowSize;
+
+    @Value("${restClient.loadBalancing.ejectionTime:30s}")
+    private Duration loadBalancingEjectionTime;
+
+    @Value("${restClient.loadBalancing.slowStart:30s}")
+    private Duration loadBalancingSlowStart;
+
+    public ReviewsRestClient(WebClient webClient, MeterRegistry meterRegistry, HedgeBudget hedgeBudget) {
         this.webClient = webClient;
+        this.meterRegistry = meterRegistry;
+        this.hedgeBudget = hedgeBudget;
+    }
+
+    @PostConstruct
+    void initCache() {
+        loadBalancer = new LoadBalancer("reviews", reviewsUrls, ReviewsRestClient::isInstanceFailure,
+                loadBalancingFailureRateThreshold, loadBalancingWindowSize, loadBalancingEjectionTime,
+                loadBalancingSlowStart, meterRegistry);
+        firstPageCache = new AsyncLookupCache<>("reviews", cacheMaximumSize, cacheTtl, cacheRefreshAfter,
+                cacheNegativeTtl, cacheLastKnownGoodTtl, this::loadFirstPage, meterRegistry);
+        ratingSummaryCache = new AsyncLookupCache<>("ratingSummary", cacheMaximumSize, cacheTtl, cacheRefreshAfter,
+                cacheNegativeTtl, cacheLastKnownGoodTtl, this::loadRatingSummary, meterRegistry);
+        if (hedgingEnabled) {
+            reviewsHedger = new RequestHedger("reviews", hedgingPercentile, hedgingMinDelay, hedgingReservoirSize,
+                    hedgeBudget, meterRegistry);
+            ratingSummaryHedger = new RequestHedger("ratingSummary", hedgingPercentile, hedgingMinDelay, hedgingReservoirSize,
+                    hedgeBudget, meterRegistry);
+        }
+    }
+
+    /**
+     * First page of reviews for the movie, served from the cache.
+     */
+    public Mono<CursorPage<Review>> retrieveFirstReviewPage(String movieId) {
+
+        return firstPageCache.get(movieId)
+                .map(page -> page.orElseGet(() -> new CursorPage<>(List.of(), null)));
+    }
+
+    /**
+     * First page of reviews for the movie as last loaded successfully, possibly well out of
+     * date; never calls out.
+     */
+    public Optional<CursorPage<Review>> lastKnownFirstReviewPage(String movieId) {
+
+        return firstPageCache.lastKnownGood(movieId);
     }
 
-    public Flux<Review> retrieveReviews(String movieId) {
+    public Mono<CursorPage<Review>> retrieveReviewPage(String movieId, String cursor, Integer limit) {
 
-        var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+        return fetchReviewPage(movieId, cursor, limit == null ? firstPageSize : limit);
+    }
+
+    public Mono<RatingSummary> retrieveRatingSummary(String movieId) {
+
+        return ratingSummaryCache.get(movieId)
+                .map(summary -> summary.orElseGet(() -> new RatingSummary(null, 0, Map.of())));
+    }
+
+    /**
+     * Rating summary for the movie as last loaded successfully, possibly well out of date;
+     * never calls out.
+     */
+    public Optional<RatingSummary> lastKnownRatingSummary(String movieId) {
+
+        return ratingSummaryCache.lastKnownGood(movieId);
+    }
+
+    private Mono<Optional<CursorPage<Review>>> loadFirstPage(String movieId) {
+        // no reviews (including a 404) is kept as a short lived negative entry
+        return fetchReviewPage(movieId, null, firstPageSize)
+                .map(page -> page.getItems() == null || page.getItems().isEmpty()
+                        ? Optional.<CursorPage<Review>>empty() : Optional.of(page))
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private Mono<Optional<RatingSummary>> loadRatingSummary(String movieId) {
+        return fetchRatingSummary(movieId)
+                .map(summary -> summary.getCount() == 0 ? Optional.<RatingSummary>empty() : Optional.of(summary))
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private Mono<CursorPage<Review>> fetchReviewPage(String movieId, String cursor, int limit) {
+
+        return hedged(reviewsHedger, () -> balanced(baseUrl -> {
+            var uriBuilder = UriComponentsBuilder.fromHttpUrl(baseUrl)
+                    .queryParam("movieInfoId", movieId)
+                    .queryParam("limit", limit);
+            if (cursor != null) {
+                uriBuilder.queryParam("cursor", cursor);
+            }
+            return retrieve(uriBuilder.buildAndExpand().toUriString())
+                    .bodyToMono(REVIEW_PAGE_TYPE);
+        }));
+    }
+
+    private Mono<RatingSummary> fetchRatingSummary(String movieId) {
+
+        // the summary is aggregated inside movies-review-service, only the counts cross the network
+        return hedged(ratingSummaryHedger, () -> balanced(baseUrl -> retrieve(UriComponentsBuilder.fromHttpUrl(baseUrl)
+                .path("/stats")
                 .queryParam("movieInfoId", movieId)
-                .buildAndExpand().toUriString();
+                .buildAndExpand().toUriString())
+                .bodyToMono(RatingSummary.class)));
+    }
+
+    // GETs are idempotent, so a slow one may be sent a second time when hedging is enabled
+    private static <T> Mono<T> hedged(RequestHedger hedger, Supplier<Mono<T>> call) {
+        return hedger == null ? call.get() : hedger.execute(call);
+    }
+
+    private <T> Mono<T> balanced(Function<String, Mono<T>> call) {
+        return loadBalancer.execute(call);
+    }
+
+    // what counts against an instance's health; a 4xx is the caller's problem, not the instance's
+    private static boolean isInstanceFailure(Throwable ex) {
+        return ex instanceof ReviewsServerException || ex instanceof DeadlineExceededException
+                || ex instanceof WebClientRequestException;
+    }
+
+    private WebClient.ResponseSpec retrieve(String url) {
 
         return webClient.get()
                 .uri(url)
@@ -52,8 +227,7 @@ public class ReviewsRestClient {
                             .flatMap(responseMessage ->Mono.error(new ReviewsServerException(
                                     "Server exception in ReviewsService"+responseMessage
                             )));
-                })
-                .bodyToFlux(Review.class);
+                });
 
     }
 
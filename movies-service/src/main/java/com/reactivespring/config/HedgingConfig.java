@@ -0,0 +1,19 @@
+package com.reactivespring.config;
+
+import com.reactivespring.util.HedgeBudget;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class HedgingConfig {
+
+    // one budget for all downstream calls, so the extra load is capped across both services
+    @Bean
+    public HedgeBudget hedgeBudget(@Value("${restClient.hedging.budget.ratio:0.05}") double ratio,
+                                   @Value("${restClient.hedging.budget.maxTokens:20}") int maxTokens,
+                                   MeterRegistry meterRegistry) {
+        return new HedgeBudget(ratio, maxTokens, meterRegistry);
+    }
+}
@@ -1,13 +1,45 @@
 package com.reactivespring.config;
 
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.Deadline;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
 
 @Configuration
 public class WebClientConfig {
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient webClient(WebClient.Builder builder, @Value("${restClient.timeout:2s}") Duration timeout) {
+        return builder
+                .filter(deadlineFilter(timeout))
+                .build();
+    }
+
+    /**
+     * Sends what is left of the inbound request's deadline along with every call, and stops
+     * waiting once it is used up. Calls made outside a request, like background cache reloads
+     * and batches, get the plain client timeout.
+     */
+    static ExchangeFilterFunction deadlineFilter(Duration timeout) {
+        return (request, next) -> Mono.deferContextual(context -> {
+            var budget = Deadline.remaining(context)
+                    .filter(remaining -> remaining.compareTo(timeout) < 0)
+                    .orElse(timeout);
+            if (budget.toMillis() < 1) {
+                return Mono.error(new DeadlineExceededException("Request deadline exceeded before calling " + request.url()));
+            }
+            var budgetedRequest = ClientRequest.from(request)
+                    .header(Deadline.HEADER, String.valueOf(budget.toMillis()))
+                    .build();
+            return next.exchange(budgetedRequest)
+                    .timeout(budget, Mono.error(() -> new DeadlineExceededException(
+                            "No response from " + request.url() + " within " + budget.toMillis() + "ms")));
+        });
     }
 }
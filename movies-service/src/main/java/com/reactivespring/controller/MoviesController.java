@@ -1,11 +1,15 @@
 package com.reactivespring.controller;
 
-import com.reactivespring.client.MoviesInfoRestClient;
-import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.domain.CursorPage;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieSelection;
+import com.reactivespring.domain.Review;
+import com.reactivespring.service.MoviesService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
@@ -13,26 +17,37 @@ import reactor.core.publisher.Mono;
 @RequestMapping("/v1/movies")
 public class MoviesController {
 
-    private MoviesInfoRestClient moviesInfoRestClient;
-    private ReviewsRestClient reviewsRestClient;
+    private MoviesService moviesService;
 
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
-        this.moviesInfoRestClient = moviesInfoRestClient;
-        this.reviewsRestClient = reviewsRestClient;
+    public MoviesController(MoviesService moviesService) {
+        this.moviesService = moviesService;
     }
 
     @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId){
-
-        System.out.println(movieId);
-      return  moviesInfoRestClient.retrieveMovieInfo(movieId)
-                //moviesInfoRestClient.retrieveMovieInfo_exchange(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewList = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
-                    return reviewList.map(reviews -> new Movie(movieInfo, reviews));
+    public Mono<ResponseEntity<Movie>> retrieveMovieById(@PathVariable("id") String movieId,
+                                                         @RequestParam(required = false) String include,
+                                                         @RequestParam(required = false) String fields){
+
+        var selection = MovieSelection.of(include, fields);
+        // with an ETag on the entity WebFlux answers a matching If-None-Match with 304 and no body
+        return moviesService.retrieveMovieById(movieId, selection)
+                .map(movie -> {
+                    var response = ResponseEntity.ok();
+                    var entityTag = moviesService.entityTag(movie, selection);
+                    if (entityTag != null) {
+                        response.eTag(entityTag);
+                    }
+                    return response.body(movie);
                 });
 
     }
 
+    @GetMapping("/{id}/reviews")
+    public Mono<CursorPage<Review>> retrieveMovieReviews(@PathVariable("id") String movieId,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(required = false) Integer limit){
+
+        return moviesService.retrieveMovieReviews(movieId, cursor, limit);
+    }
+
 }
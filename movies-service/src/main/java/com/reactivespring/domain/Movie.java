@@ -1,6 +1,7 @@
 package com.reactivespring.domain;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -10,8 +11,16 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+// parts that were not asked for with include= are omitted
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class Movie {
 
     private MovieInfo movieInfo;
+    private RatingSummary ratingSummary;
+    // first page of reviews only, the rest is available from /v1/movies/{id}/reviews
     private List<Review> reviewList;
+    private String nextReviewsCursor;
+    // "partial" when movies-review-service did not answer in time and the review parts are
+    // cached or empty, absent otherwise
+    private String reviewsStatus;
 }
@@ -1,6 +1,7 @@
 package com.reactivespring.domain;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,6 +17,8 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Validated
+// fields left out by a fields= projection are omitted rather than sent as null
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MovieInfo {
     private String movieInfoId;
     @NotBlank(message = "movieInfo.name must be present")
@@ -27,4 +30,11 @@ public class MovieInfo {
     @NotNull
     private List<@NotBlank(message = "movieInfo.cast must be present") String> cast;
     private LocalDate release_date;
+
+    // document version in movies-info-service, part of the ETag of GET /v1/movies/{id}
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 }
@@ -0,0 +1,59 @@
+package com.reactivespring.domain;
+
+import com.reactivespring.exception.MoviesRequestException;
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * What a caller of /v1/movies/{id} asked for: the optional sub-resources to include (the
+ * movie info itself is always returned) and the movie info fields to read. Both are kept in
+ * a canonical order so that equal selections share cache and coalescing entries.
+ */
+@Value
+public class MovieSelection {
+
+    public static final String RATING_SUMMARY = "ratingSummary";
+    public static final String REVIEWS = "reviews";
+
+    private static final Set<String> PARTS = Set.of(RATING_SUMMARY, REVIEWS);
+
+    SortedSet<String> include;
+
+    // null when the whole movie info is wanted
+    List<String> movieInfoFields;
+
+    public static MovieSelection of(String include, String fields) {
+        var parts = include == null ? new TreeSet<>(PARTS) : split(include);
+        var unknown = parts.stream()
+                .filter(part -> !PARTS.contains(part))
+                .collect(Collectors.joining(","));
+        if (!unknown.isEmpty()) {
+            throw new MoviesRequestException("Unknown include : " + unknown + ", expected any of " + new TreeSet<>(PARTS));
+        }
+        if (fields != null && split(fields).isEmpty()) {
+            throw new MoviesRequestException("fields must name at least one field");
+        }
+        return new MovieSelection(parts, fields == null ? null : List.copyOf(split(fields)));
+    }
+
+    public boolean includes(String part) {
+        return include.contains(part);
+    }
+
+    public String key() {
+        return String.join(",", include) + "|" + (movieInfoFields == null ? "*" : String.join(",", movieInfoFields));
+    }
+
+    private static SortedSet<String> split(String values) {
+        return Arrays.stream(values.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+}
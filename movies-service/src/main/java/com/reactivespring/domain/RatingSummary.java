@@ -0,0 +1,29 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RatingSummary {
+
+    private Double average;
+    private long count;
+
+    // number of ratings per whole rating point, as computed by movies-review-service
+    @JsonAlias("histogram")
+    private Map<String, Long> distribution;
+
+    // version of the stats document, bumped on every review write of the movie; null when the
+    // movie has no stats document yet
+    private Long version;
+
+    public RatingSummary(Double average, long count, Map<String, Long> distribution) {
+        this(average, count, distribution, null);
+    }
+}
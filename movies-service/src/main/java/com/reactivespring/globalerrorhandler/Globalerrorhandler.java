@@ -1,6 +1,8 @@
 package com.reactivespring.globalerrorhandler;
 
+import com.reactivespring.exception.DeadlineExceededException;
 import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesRequestException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +20,20 @@ public class Globalerrorhandler {
 
     }
 
+    @ExceptionHandler(MoviesRequestException.class)
+    public ResponseEntity<String> handleRequestException(MoviesRequestException exception){
+        log.error("Exceptin caught in handleRequestException:{}",exception.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+
+    }
+
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<String> handleDeadlineExceededException(DeadlineExceededException exception){
+        log.error("Exceptin caught in handleDeadlineExceededException:{}",exception.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(exception.getMessage());
+
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRuntimeException(RuntimeException exception){
         log.error("Exceptin caught in handleRuntimeException:{}",exception.getMessage());
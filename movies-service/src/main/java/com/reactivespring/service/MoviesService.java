@@ -0,0 +1,128 @@
+package com.reactivespring.service;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.domain.CursorPage;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieSelection;
+import com.reactivespring.domain.RatingSummary;
+import com.reactivespring.domain.Review;
+import com.reactivespring.util.RequestCoalescer;
+import com.reactivespring.exception.ReviewsClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@Service
+public class MoviesService {
+
+    public static final String REVIEWS_PARTIAL = "partial";
+
+    /**
+     * One review part of a movie: its value if there is one, and whether it is a stand-in
+     * because movies-review-service did not answer in time.
+     */
+    @AllArgsConstructor
+    private static class ReviewsPart<T> {
+        private final Optional<T> value;
+        private final boolean partial;
+    }
+
+    private MoviesInfoRestClient moviesInfoRestClient;
+    private ReviewsRestClient reviewsRestClient;
+    private RequestCoalescer<String, Movie> movieCoalescer;
+    private Counter partialCounter;
+
+    @Value("${movies.reviewsBudget:300ms}")
+    private Duration reviewsBudget;
+
+    public MoviesService(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                         MeterRegistry meterRegistry) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.reviewsRestClient = reviewsRestClient;
+        this.movieCoalescer = new RequestCoalescer<>("movie", meterRegistry);
+        this.partialCounter = Counter.builder("movies.reviews.partial")
+                .register(meterRegistry);
+    }
+
+    public Mono<Movie> retrieveMovieById(String movieId, MovieSelection selection) {
+        // only callers asking for the same selection can share a call
+        return movieCoalescer.execute(movieId + "|" + selection.key(), key -> buildMovie(movieId, selection));
+    }
+
+    public Mono<CursorPage<Review>> retrieveMovieReviews(String movieId, String cursor, Integer limit) {
+        return reviewsRestClient.retrieveReviewPage(movieId, cursor, limit);
+    }
+
+    /**
+     * ETag of a movie built for the given selection, made of the versions of the documents it was
+     * built from. The review list has no version of its own but every review write bumps the
+     * stats version, so a selection with reviews also needs the rating summary. Null when a
+     * needed version is missing or the reviews are partial, in which case no ETag is sent.
+     */
+    public String entityTag(Movie movie, MovieSelection selection) {
+        if (movie.getReviewsStatus() != null) {
+            // a stand-in review part must not be confused with the real one by a cache
+            return null;
+        }
+        var infoVersion = movie.getMovieInfo() == null ? null : movie.getMovieInfo().getVersion();
+        if (infoVersion == null) {
+            return null;
+        }
+        if (selection.getInclude().isEmpty()) {
+            return String.valueOf(infoVersion);
+        }
+        var statsVersion = movie.getRatingSummary() == null ? null : movie.getRatingSummary().getVersion();
+        return statsVersion == null ? null : infoVersion + "-" + statsVersion;
+    }
+
+    private Mono<Movie> buildMovie(String movieId, MovieSelection selection) {
+        // the lookups only need the id, so subscribe to them together; zip cancels the review
+        // calls as soon as the movie info call fails (e.g. MoviesInfoClientException on 404).
+        // Parts that were not asked for are never requested from movies-review-service.
+        var movieInfoMono = moviesInfoRestClient.retrieveMovieInfo(movieId, selection.getMovieInfoFields());
+        var ratingSummaryMono = selection.includes(MovieSelection.RATING_SUMMARY)
+                ? withinReviewsBudget(reviewsRestClient.retrieveRatingSummary(movieId),
+                        () -> reviewsRestClient.lastKnownRatingSummary(movieId))
+                : Mono.just(new ReviewsPart<>(Optional.<RatingSummary>empty(), false));
+        var reviewPageMono = selection.includes(MovieSelection.REVIEWS)
+                ? withinReviewsBudget(reviewsRestClient.retrieveFirstReviewPage(movieId),
+                        () -> Optional.of(reviewsRestClient.lastKnownFirstReviewPage(movieId)
+                                .orElseGet(() -> new CursorPage<>(List.of(), null))))
+                : Mono.just(new ReviewsPart<>(Optional.<CursorPage<Review>>empty(), false));
+
+        return Mono.zip(movieInfoMono, ratingSummaryMono, reviewPageMono)
+                .map(tuple -> {
+                    var partial = tuple.getT2().partial || tuple.getT3().partial;
+                    if (partial) {
+                        partialCounter.increment();
+                    }
+                    return new Movie(tuple.getT1(), tuple.getT2().value.orElse(null),
+                            tuple.getT3().value.map(CursorPage::getItems).orElse(null),
+                            tuple.getT3().value.map(CursorPage::getNextCursor).orElse(null),
+                            partial ? REVIEWS_PARTIAL : null);
+                });
+    }
+
+    /**
+     * Movie info is the part the page cannot do without, so a review part that has not
+     * arrived within reviewsBudget, or whose call failed on the server side, is replaced by
+     * the fallback (the last value loaded successfully, if any) and the call is cancelled.
+     * A 4xx is still an error.
+     */
+    private <T> Mono<ReviewsPart<T>> withinReviewsBudget(Mono<T> call, Supplier<Optional<T>> fallback) {
+        return call
+                .map(value -> new ReviewsPart<>(Optional.of(value), false))
+                .timeout(reviewsBudget)
+                .onErrorResume(ex -> !(ex instanceof ReviewsClientException),
+                        ex -> Mono.fromSupplier(() -> new ReviewsPart<>(fallback.get(), true)));
+    }
+}
@@ -0,0 +1,153 @@
+package com.reactivespring.util;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Bounded async cache in front of a remote lookup.
+ * <p>
+ * Entries older than {@code refreshAfter} are still served while a single background reload
+ * replaces them (stale-while-revalidate); entries older than {@code ttl} are dropped. An empty
+ * Optional from the loader is a negative result and only lives for {@code negativeTtl}.
+ * Loader errors are never cached. Hit, miss and eviction counts are published as
+ * {@code cache.*} metrics tagged with the cache name.
+ * <p>
+ * With a {@code lastKnownGoodTtl}, the value of the last successful load is also kept apart
+ * from the entry, for callers that would rather serve an old value than none while the
+ * remote side is slow or failing. A negative result clears it.
+ * <p>
+ * A load runs within the Reactor context, and so the {@link Deadline}, of the caller that
+ * starts it, and is cancelled once no caller is waiting for it any more. Background reloads
+ * run without a deadline.
+ */
+public class AsyncLookupCache<K, V> {
+
+    private final AsyncLoadingCache<K, Optional<V>> cache;
+    private final Function<K, Mono<Optional<V>>> loader;
+    // callers waiting for each load in progress
+    private final ConcurrentMap<CompletableFuture<Optional<V>>, Integer> waiters = new ConcurrentHashMap<>();
+    // null when no last known good values are kept
+    private final Cache<K, V> lastKnownGood;
+
+    public AsyncLookupCache(String name, long maximumSize, Duration ttl, Duration refreshAfter, Duration negativeTtl,
+                            Function<K, Mono<Optional<V>>> loader, MeterRegistry meterRegistry) {
+        this(name, maximumSize, ttl, refreshAfter, negativeTtl, Duration.ZERO, loader, meterRegistry);
+    }
+
+    public AsyncLookupCache(String name, long maximumSize, Duration ttl, Duration refreshAfter, Duration negativeTtl,
+                            Duration lastKnownGoodTtl, Function<K, Mono<Optional<V>>> loader, MeterRegistry meterRegistry) {
+        this.loader = loader;
+        this.lastKnownGood = lastKnownGoodTtl.isZero() ? null : Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(lastKnownGoodTtl)
+                .build();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TtlExpiry<K, V>(ttl.toNanos(), negativeTtl.toNanos()))
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .buildAsync((key, executor) -> load(key, Context.empty()));
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    private CompletableFuture<Optional<V>> load(K key, ContextView context) {
+        // cancelling the future cancels the load
+        return loader.apply(key)
+                .doOnNext(value -> rememberLastKnownGood(key, value))
+                .contextWrite(context)
+                .toFuture();
+    }
+
+    private void rememberLastKnownGood(K key, Optional<V> value) {
+        if (lastKnownGood == null) {
+            return;
+        }
+        value.ifPresentOrElse(v -> lastKnownGood.put(key, v), () -> lastKnownGood.invalidate(key));
+    }
+
+    public Mono<Optional<V>> get(K key) {
+        return Deadline.retryShared(Mono.deferContextual(context -> {
+            var started = new boolean[1];
+            var future = cache.get(key, (k, executor) -> {
+                started[0] = true;
+                return load(k, context);
+            });
+            if (!started[0] && future.isCompletedExceptionally()) {
+                // a failed or cancelled load that has not been dropped yet
+                cache.asMap().remove(key, future);
+                future = cache.get(key, (k, executor) -> load(k, context));
+            }
+            return future.isDone() ? Mono.fromCompletionStage(future) : waitFor(future);
+        })).onErrorResume(CancellationException.class, ex -> {
+            // the last caller of a load gave up on it just as this one joined
+            return get(key);
+        });
+    }
+
+    private Mono<Optional<V>> waitFor(CompletableFuture<Optional<V>> future) {
+        return Mono.defer(() -> {
+            waiters.merge(future, 1, Integer::sum);
+            // fromCompletionStage never cancels the shared future, so one caller going away
+            // does not fail the load for everybody else waiting on the same key
+            return Mono.fromCompletionStage(future)
+                    .doFinally(signalType -> {
+                        var left = waiters.computeIfPresent(future, (f, count) -> count == 1 ? null : count - 1);
+                        if (left == null && signalType == SignalType.CANCEL) {
+                            // nobody is waiting any more: fails the future, which drops it
+                            // from the cache, and cancels the load
+                            future.cancel(true);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * The value of the last successful load for the key, which outlives the entry itself by
+     * up to lastKnownGoodTtl. Never starts a load or waits for one.
+     */
+    public Optional<V> lastKnownGood(K key) {
+        return lastKnownGood == null ? Optional.empty() : Optional.ofNullable(lastKnownGood.getIfPresent(key));
+    }
+
+    private static class TtlExpiry<K, V> implements Expiry<K, Optional<V>> {
+
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        TtlExpiry(long ttlNanos, long negativeTtlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(K key, Optional<V> value, long currentTime) {
+            return value.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, Optional<V> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, Optional<V> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Token bucket shared by every {@link RequestHedger}: each request adds {@code ratio} of a
+ * token and each hedge takes a whole one, so hedges stay below {@code ratio} of the requests
+ * sent, plus a burst of at most {@code maxTokens}. When a downstream slows down for every
+ * request the bucket drains and hedging stops instead of doubling its load.
+ */
+public class HedgeBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+
+    // guarded by this
+    private double tokens;
+
+    public HedgeBudget(double ratio, int maxTokens, MeterRegistry meterRegistry) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+        Gauge.builder("movies.hedging.budget.tokens", this, HedgeBudget::available)
+                .register(meterRegistry);
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    synchronized double available() {
+        return tokens;
+    }
+}
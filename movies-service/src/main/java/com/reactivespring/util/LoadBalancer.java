@@ -0,0 +1,184 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Client side balancing across the instances of one backend. Each call goes to the less loaded
+ * of two randomly picked instances (power of two choices), where the load is the number of
+ * calls still outstanding on it.
+ * <p>
+ * Instances are health checked passively: once {@code failureRateThreshold} of the last
+ * {@code windowSize} calls to an instance failed with a 5xx, a timeout or a connection error,
+ * it is taken out of rotation for {@code ejectionTime}. When it returns its share of the load
+ * ramps up over {@code slowStart}, so a cold instance is not flooded. The last instance in
+ * rotation is never ejected, and if every instance is out all of them are used anyway.
+ */
+public class LoadBalancer {
+
+    private static final double MIN_WEIGHT = 0.1;
+
+    private class Instance {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private Counter ejectionCounter;
+
+        // ring buffer of recent outcomes, guarded by this
+        private final boolean[] failed = new boolean[windowSize];
+        private int next;
+        private int samples;
+        private int failures;
+
+        // 0 until the instance is ejected for the first time
+        private volatile long returnsAt;
+
+        Instance(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        boolean isAvailable(long now) {
+            return returnsAt == 0 || now - returnsAt >= 0;
+        }
+
+        double weight(long now) {
+            if (returnsAt == 0 || slowStartNanos == 0) {
+                return 1;
+            }
+            return Math.max(MIN_WEIGHT, Math.min(1, (double) (now - returnsAt) / slowStartNanos));
+        }
+
+        double load(long now) {
+            return (outstanding.get() + 1) / weight(now);
+        }
+
+        synchronized boolean record(boolean failure) {
+            if (failed[next]) {
+                failures--;
+            }
+            failed[next] = failure;
+            if (failure) {
+                failures++;
+            }
+            next = (next + 1) % windowSize;
+            samples = Math.min(samples + 1, windowSize);
+            return failure && samples == windowSize && failures >= failureRateThreshold * windowSize;
+        }
+
+        synchronized void eject(long now) {
+            Arrays.fill(failed, false);
+            next = 0;
+            samples = 0;
+            failures = 0;
+            returnsAt = now + ejectionNanos;
+        }
+    }
+
+    private final List<Instance> instances;
+    private final Predicate<Throwable> isFailure;
+    private final double failureRateThreshold;
+    private final int windowSize;
+    private final long ejectionNanos;
+    private final long slowStartNanos;
+    private final LongSupplier clock;
+
+    public LoadBalancer(String name, List<String> baseUrls, Predicate<Throwable> isFailure, double failureRateThreshold,
+                        int windowSize, Duration ejectionTime, Duration slowStart, MeterRegistry meterRegistry) {
+        this(name, baseUrls, isFailure, failureRateThreshold, windowSize, ejectionTime, slowStart, meterRegistry,
+                System::nanoTime);
+    }
+
+    LoadBalancer(String name, List<String> baseUrls, Predicate<Throwable> isFailure, double failureRateThreshold,
+                 int windowSize, Duration ejectionTime, Duration slowStart, MeterRegistry meterRegistry,
+                 LongSupplier clock) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one instance is needed for " + name);
+        }
+        this.isFailure = isFailure;
+        this.failureRateThreshold = failureRateThreshold;
+        this.windowSize = windowSize;
+        this.ejectionNanos = ejectionTime.toNanos();
+        this.slowStartNanos = slowStart.toNanos();
+        this.clock = clock;
+        this.instances = baseUrls.stream()
+                .map(String::trim)
+                .distinct()
+                .map(Instance::new)
+                .collect(Collectors.toList());
+        for (var instance : instances) {
+            Gauge.builder("movies.loadbalancer.outstanding", instance.outstanding, AtomicInteger::get)
+                    .tag("name", name)
+                    .tag("instance", instance.baseUrl)
+                    .register(meterRegistry);
+            instance.ejectionCounter = Counter.builder("movies.loadbalancer.ejections")
+                    .tag("name", name)
+                    .tag("instance", instance.baseUrl)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @param call makes the call against the base url of the chosen instance; an instance is
+     *             chosen on every subscription, so a retry or a hedge may go elsewhere
+     */
+    public <T> Mono<T> execute(Function<String, Mono<T>> call) {
+        return Mono.defer(() -> {
+            var instance = choose();
+            instance.outstanding.incrementAndGet();
+            return call.apply(instance.baseUrl)
+                    .doOnSuccess(value -> record(instance, false))
+                    // a 4xx says nothing about the instance's health
+                    .doOnError(ex -> record(instance, isFailure.test(ex)))
+                    .doFinally(signalType -> instance.outstanding.decrementAndGet());
+        });
+    }
+
+    private Instance choose() {
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        var now = clock.getAsLong();
+        var candidates = instances.stream()
+                .filter(instance -> instance.isAvailable(now))
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            candidates = instances;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        var random = ThreadLocalRandom.current();
+        var first = random.nextInt(candidates.size());
+        var second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        var a = candidates.get(first);
+        var b = candidates.get(second);
+        return a.load(now) <= b.load(now) ? a : b;
+    }
+
+    private void record(Instance instance, boolean failure) {
+        if (!instance.record(failure)) {
+            return;
+        }
+        var now = clock.getAsLong();
+        var othersAvailable = instances.stream()
+                .anyMatch(other -> other != instance && other.isAvailable(now));
+        if (othersAvailable && instance.isAvailable(now)) {
+            instance.eject(now);
+            instance.ejectionCounter.increment();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * DataLoader style batching of keyed lookups: the distinct keys asked for within a short
+ * window are loaded with one call to the batch loader, and each caller gets its own value
+ * back. A batch is sent early once it reaches maxBatchSize. Keys missing from the loaded
+ * map complete with an empty Optional, a failed batch fails every caller in it.
+ */
+public class MicroBatcher<K, V> {
+
+    private final Function<Set<K>, Mono<Map<K, V>>> batchLoader;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final DistributionSummary batchSizeSummary;
+
+    // guarded by this
+    private Map<K, Sinks.One<Optional<V>>> pending = new LinkedHashMap<>();
+    private Disposable scheduledFlush;
+
+    public MicroBatcher(String name, Duration window, int maxBatchSize,
+                        Function<Set<K>, Mono<Map<K, V>>> batchLoader, MeterRegistry meterRegistry) {
+        this.batchLoader = batchLoader;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizeSummary = DistributionSummary.builder("movies.batching.size")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<Optional<V>> load(K key) {
+        return Mono.defer(() -> {
+            Sinks.One<Optional<V>> sink;
+            Map<K, Sinks.One<Optional<V>>> fullBatch = null;
+            synchronized (this) {
+                sink = pending.computeIfAbsent(key, k -> Sinks.one());
+                if (pending.size() >= maxBatchSize) {
+                    fullBatch = takePending();
+                } else if (scheduledFlush == null) {
+                    scheduledFlush = Mono.delay(window).subscribe(tick -> flush());
+                }
+            }
+            if (fullBatch != null) {
+                dispatch(fullBatch);
+            }
+            return sink.asMono();
+        });
+    }
+
+    private void flush() {
+        Map<K, Sinks.One<Optional<V>>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private Map<K, Sinks.One<Optional<V>>> takePending() {
+        var batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Map<K, Sinks.One<Optional<V>>> batch) {
+        batchSizeSummary.record(batch.size());
+        Mono.defer(() -> batchLoader.apply(Set.copyOf(batch.keySet())))
+                .defaultIfEmpty(Map.of())
+                .subscribe(
+                        values -> batch.forEach((key, sink) -> sink.tryEmitValue(Optional.ofNullable(values.get(key)))),
+                        ex -> batch.values().forEach(sink -> sink.tryEmitError(ex)));
+    }
+}
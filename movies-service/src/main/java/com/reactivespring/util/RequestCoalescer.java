@@ -0,0 +1,63 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Single-flight execution of keyed lookups: concurrent callers asking for the same key
+ * share one in-flight Mono instead of each triggering their own downstream calls.
+ * The entry is dropped as soon as the shared call terminates or is cancelled, so nothing is
+ * cached. The shared call runs within the deadline of the caller that started it; a caller
+ * that joined with more time left than that starts the call again when it runs out.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderCounter;
+    private final Counter joinedCounter;
+
+    public RequestCoalescer(String name, MeterRegistry meterRegistry) {
+        this.leaderCounter = Counter.builder("movies.coalescing.requests")
+                .tag("name", name)
+                .tag("result", "leader")
+                .register(meterRegistry);
+        this.joinedCounter = Counter.builder("movies.coalescing.requests")
+                .tag("name", name)
+                .tag("result", "joined")
+                .register(meterRegistry);
+        Gauge.builder("movies.coalescing.inflight", inFlight, ConcurrentMap::size)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Function<K, Mono<V>> call) {
+        return Deadline.retryShared(Mono.defer(() -> {
+            var leader = new boolean[1];
+            var shared = inFlight.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                // removed only while it is still this call's entry, never a newer call's
+                var entry = new AtomicReference<Mono<V>>();
+                // refCount: the shared call is cancelled once every caller waiting for it has
+                // gone away (disconnected or out of time), instead of running to completion
+                entry.set(Mono.from(call.apply(k)
+                        // dropped before the result reaches the callers, so a caller that
+                        // calls again right away starts a new call
+                        .doOnTerminate(() -> inFlight.remove(k, entry.get()))
+                        .doOnCancel(() -> inFlight.remove(k, entry.get()))
+                        .flux()
+                        .publish()
+                        .refCount()));
+                return entry.get();
+            });
+            (leader[0] ? leaderCounter : joinedCounter).increment();
+            return shared;
+        }));
+    }
+}
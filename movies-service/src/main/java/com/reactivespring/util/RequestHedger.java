@@ -0,0 +1,131 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Hedging of idempotent calls: when the call has not answered within the current hedge delay
+ * a second identical call is sent, the first of the two to signal wins and the other one is
+ * cancelled. The delay is the configured percentile of the latencies of recent successful or
+ * cancelled calls (never below {@code minDelay}), so only the slowest calls are hedged. No
+ * hedges are sent until {@code reservoirSize / 8} latencies have been seen, or when the shared
+ * {@link HedgeBudget} is used up.
+ */
+public class RequestHedger {
+
+    @AllArgsConstructor
+    private static class Attempt<T> {
+        private final T value;
+        private final boolean hedge;
+    }
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final HedgeBudget hedgeBudget;
+    private final Counter sentCounter;
+    private final Counter wonCounter;
+    private final Counter deniedCounter;
+
+    // ring buffer of recent latencies, guarded by itself
+    private final long[] latencies;
+    private long recorded;
+
+    // recomputed every few recorded latencies rather than on every call, 0 while warming up
+    private volatile long hedgeDelayNanos;
+
+    public RequestHedger(String name, double percentile, Duration minDelay, int reservoirSize,
+                         HedgeBudget hedgeBudget, MeterRegistry meterRegistry) {
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.hedgeBudget = hedgeBudget;
+        this.latencies = new long[reservoirSize];
+        this.sentCounter = hedgeCounter(name, "sent", meterRegistry);
+        this.wonCounter = hedgeCounter(name, "won", meterRegistry);
+        this.deniedCounter = hedgeCounter(name, "denied", meterRegistry);
+        Gauge.builder("movies.hedging.delay", this, hedger -> hedger.hedgeDelayNanos / 1_000_000.0)
+                .tag("name", name)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    private static Counter hedgeCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.hedging.requests")
+                .tag("name", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param call creates one attempt; it is subscribed once for the request and once more
+     *             for the hedge, so it must be safe to repeat
+     */
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            hedgeBudget.deposit();
+            var primary = timed(call).map(value -> new Attempt<>(value, false));
+            var delay = hedgeDelayNanos;
+            if (delay == 0) {
+                return primary.map(attempt -> attempt.value);
+            }
+            // a hedge that is not sent must never signal, or it would win the race with nothing
+            var hedge = Mono.delay(Duration.ofNanos(delay))
+                    .flatMap(tick -> {
+                        if (!hedgeBudget.tryWithdraw()) {
+                            deniedCounter.increment();
+                            return Mono.<Attempt<T>>never();
+                        }
+                        sentCounter.increment();
+                        return timed(call).map(value -> new Attempt<>(value, true));
+                    });
+            return Mono.firstWithSignal(primary, hedge)
+                    .doOnNext(attempt -> {
+                        if (attempt.hedge) {
+                            wonCounter.increment();
+                        }
+                    })
+                    .map(attempt -> attempt.value);
+        });
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            // an attempt that is cancelled, because the other one won or the caller gave up, took
+            // at least this long; leaving it out would leave only the fast calls in the reservoir
+            return call.get()
+                    .doFinally(signalType -> {
+                        if (signalType == SignalType.ON_COMPLETE || signalType == SignalType.CANCEL) {
+                            record(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    void record(long latencyNanos) {
+        long[] snapshot = null;
+        synchronized (latencies) {
+            latencies[(int) (recorded++ % latencies.length)] = latencyNanos;
+            var recomputeEvery = Math.max(1, latencies.length / 8);
+            if (recorded >= recomputeEvery && recorded % recomputeEvery == 0) {
+                snapshot = Arrays.copyOf(latencies, (int) Math.min(recorded, latencies.length));
+            }
+        }
+        if (snapshot != null) {
+            Arrays.sort(snapshot);
+            var index = (int) Math.min(snapshot.length - 1, Math.ceil(percentile * snapshot.length) - 1);
+            hedgeDelayNanos = Math.max(minDelayNanos, snapshot[Math.max(0, index)]);
+        }
+    }
+
+    long hedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+}
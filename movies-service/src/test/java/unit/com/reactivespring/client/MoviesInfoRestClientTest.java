@@ -0,0 +1,132 @@
+package com.reactivespring.client;
+
+import com.reactivespring.config.WebClientConfig;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.HedgeBudget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Goes through the real cache, load balancer and deadline filter, only the HTTP exchange is
+ * stubbed.
+ */
+class MoviesInfoRestClientTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    List<ClientRequest> sent = new CopyOnWriteArrayList<>();
+
+    // what the exchange answers to the n-th request
+    Function<Integer, Mono<ClientResponse>> responses;
+
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    @BeforeEach
+    void setUp() {
+        var webClient = new WebClientConfig().webClient(WebClient.builder()
+                .exchangeFunction(request -> {
+                    sent.add(request);
+                    return responses.apply(sent.size());
+                }), Duration.ofSeconds(2));
+        moviesInfoRestClient = new MoviesInfoRestClient(webClient, meterRegistry, new HedgeBudget(0.05, 20, meterRegistry));
+        ReflectionTestUtils.setField(moviesInfoRestClient, "moviesInfoUrls", List.of("http://localhost:8080/v1/movieinfos"));
+        ReflectionTestUtils.setField(moviesInfoRestClient, "cacheMaximumSize", 100L);
+        ReflectionTestUtils.setField(moviesInfoRestClient, "cacheTtl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(moviesInfoRestClient, "cacheRefreshAfter", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(moviesInfoRestClient, "cacheNegativeTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(moviesInfoRestClient, "loadBalancingFailureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(moviesInfoRestClient, "loadBalancingWindowSize", 20);
+        ReflectionTestUtils.setField(moviesInfoRestClient, "loadBalancingEjectionTime", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(moviesInfoRestClient, "loadBalancingSlowStart", Duration.ofSeconds(30));
+        moviesInfoRestClient.initCache();
+    }
+
+    static Mono<ClientResponse> movieInfo() {
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body("{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\",\"year\":2012}")
+                .build());
+    }
+
+    static <T> Mono<T> withDeadline(Mono<T> call, Duration budget) {
+        return call.contextWrite(context -> Deadline.put(context, System.nanoTime() + budget.toNanos()));
+    }
+
+    long sentBudget(int index) {
+        return Long.parseLong(sent.get(index).headers().getFirst(Deadline.HEADER));
+    }
+
+    @Test
+    void cacheLoadCarriesTheCallersDeadline() {
+
+        responses = n -> movieInfo();
+
+        StepVerifier.create(withDeadline(moviesInfoRestClient.retrieveMovieInfo("abc", null), Duration.ofMillis(300)))
+                .expectNextMatches(movieInfo -> movieInfo.getName().equals("Dark Knight Rises"))
+                .verifyComplete();
+
+        assertTrue(sentBudget(0) > 0 && sentBudget(0) <= 300, "budget " + sentBudget(0));
+    }
+
+    @Test
+    void cacheLoadIsCancelledOnceNobodyWaits() {
+
+        PublisherProbe<ClientResponse> exchange = PublisherProbe.of(Mono.never());
+        responses = n -> exchange.mono();
+
+        StepVerifier.create(withDeadline(moviesInfoRestClient.retrieveMovieInfo("abc", null), Duration.ofSeconds(1))
+                        .timeout(Duration.ofMillis(50)))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(1));
+
+        exchange.assertWasCancelled();
+    }
+
+    @Test
+    void callerWithMoreTimeOutlastsTheLoadItJoined() {
+
+        responses = n -> n == 1 ? Mono.never() : movieInfo();
+
+        // the load is started by a caller with little time, which it runs out of
+        withDeadline(moviesInfoRestClient.retrieveMovieInfo("abc", null), Duration.ofMillis(300))
+                .subscribe(movieInfo -> {}, ex -> {});
+
+        StepVerifier.create(withDeadline(moviesInfoRestClient.retrieveMovieInfo("abc", null), Duration.ofSeconds(2)))
+                .expectNextMatches(movieInfo -> movieInfo.getName().equals("Dark Knight Rises"))
+                .verifyComplete();
+
+        assertEquals(2, sent.size());
+        assertTrue(sentBudget(1) > 1000, "budget " + sentBudget(1));
+    }
+
+    @Test
+    void callerOutOfTimeGetsDeadlineExceeded() {
+
+        responses = n -> Mono.never();
+
+        StepVerifier.create(withDeadline(moviesInfoRestClient.retrieveMovieInfo("abc", null), Duration.ofMillis(50)))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+}
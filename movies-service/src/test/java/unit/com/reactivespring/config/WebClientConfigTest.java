@@ -0,0 +1,67 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.util.Deadline;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebClientConfigTest {
+
+    ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost:8080/v1/movieinfos/abc")).build();
+
+    List<ClientRequest> sent = new ArrayList<>();
+
+    @Test
+    void forwardsRemainingBudget() {
+
+        var filter = WebClientConfig.deadlineFilter(Duration.ofSeconds(2));
+
+        StepVerifier.create(filter.filter(request, this::respondOk)
+                        .contextWrite(context -> Deadline.put(context, System.nanoTime() + Duration.ofMillis(500).toNanos())))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        var budget = Long.parseLong(sent.get(0).headers().getFirst(Deadline.HEADER));
+        assertTrue(budget > 0 && budget <= 500, "budget " + budget);
+    }
+
+    @Test
+    void usesClientTimeoutOutsideARequest() {
+
+        var filter = WebClientConfig.deadlineFilter(Duration.ofSeconds(2));
+
+        StepVerifier.create(filter.filter(request, this::respondOk))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals("2000", sent.get(0).headers().getFirst(Deadline.HEADER));
+    }
+
+    @Test
+    void stopsWaitingWhenBudgetIsUsedUp() {
+
+        var filter = WebClientConfig.deadlineFilter(Duration.ofMillis(50));
+
+        StepVerifier.create(filter.filter(request, clientRequest -> Mono.never()))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    private Mono<ClientResponse> respondOk(ClientRequest clientRequest) {
+        sent.add(clientRequest);
+        return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+    }
+}
@@ -1,4 +1,249 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.domain.CursorPage;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.RatingSummary;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.service.MoviesService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.test.publisher.PublisherProbe;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(MoviesController.class)
+@Import({MoviesService.class, SimpleMeterRegistry.class})
+@AutoConfigureWebTestClient
 public class MoviesControllerUnitTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private MoviesInfoRestClient moviesInfoRestClientMock;
+
+    @MockBean
+    private ReviewsRestClient reviewsRestClientMock;
+
+    static String MOVIES_URL = "/v1/movies";
+
+    @Test
+    void retrieveMovieById() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), isNull()))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+        when(reviewsRestClientMock.retrieveRatingSummary(isA(String.class)))
+                .thenReturn(Mono.just(new RatingSummary(8.5, 2, Map.of("8", 1L, "9", 1L))));
+        when(reviewsRestClientMock.retrieveFirstReviewPage(isA(String.class)))
+                .thenReturn(Mono.just(new CursorPage<>(List.of(new Review("1", 1L, "Awesome Movie", 9.0),
+                        new Review("2", 1L, "Excellent Movie", 8.0)), "Mg")));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assert movie != null;
+                    assertEquals("Dark Knight Rises", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                    assertEquals(8.5, movie.getRatingSummary().getAverage());
+                    assertEquals("Mg", movie.getNextReviewsCursor());
+                });
+    }
+
+    @Test
+    void retrieveMovieById_404_cancelsReviews() {
+
+        var movieId = "abc";
+        PublisherProbe<CursorPage<Review>> reviewsProbe = PublisherProbe.of(Mono.<CursorPage<Review>>never().timeout(Duration.ofSeconds(5)));
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), isNull()))
+                .thenReturn(Mono.delay(Duration.ofMillis(50))
+                        .then(Mono.error(new MoviesInfoClientException("There is no MovieInfo available passed in Id :" + movieId, 404))));
+        when(reviewsRestClientMock.retrieveRatingSummary(isA(String.class)))
+                .thenReturn(Mono.never());
+        when(reviewsRestClientMock.retrieveFirstReviewPage(isA(String.class)))
+                .thenReturn(reviewsProbe.mono());
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+
+        reviewsProbe.assertWasSubscribed();
+        reviewsProbe.assertWasCancelled();
+    }
+
+    @Test
+    void retrieveMovieById_movieInfoOnly() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), eq(List.of("name", "year"))))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises", 2012, null, null)));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}?include=&fields=year,name", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.movieInfo.name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.movieInfo.cast").doesNotExist()
+                .jsonPath("$.ratingSummary").doesNotExist()
+                .jsonPath("$.reviewList").doesNotExist();
+
+        verify(reviewsRestClientMock, never()).retrieveRatingSummary(any());
+        verify(reviewsRestClientMock, never()).retrieveFirstReviewPage(any());
+    }
+
+    @Test
+    void retrieveMovieById_notModified() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), isNull()))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 3L)));
+        when(reviewsRestClientMock.retrieveRatingSummary(isA(String.class)))
+                .thenReturn(Mono.just(new RatingSummary(8.5, 2, Map.of("8", 1L, "9", 1L), 7L)));
+        when(reviewsRestClientMock.retrieveFirstReviewPage(isA(String.class)))
+                .thenReturn(Mono.just(new CursorPage<>(List.of(new Review("1", 1L, "Awesome Movie", 9.0)), null)));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals("ETag", "\"3-7\"");
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .header("If-None-Match", "\"3-7\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+    }
+
+    @Test
+    void retrieveMovieById_reviewsWithoutSummary_noETag() {
+
+        var movieId = "abc";
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), isNull()))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 3L)));
+        when(reviewsRestClientMock.retrieveFirstReviewPage(isA(String.class)))
+                .thenReturn(Mono.just(new CursorPage<>(List.of(new Review("1", 1L, "Awesome Movie", 9.0)), null)));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}?include=reviews", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("ETag");
+    }
+
+    @Test
+    void retrieveMovieById_deadlineExceeded() {
+
+        var movieId = "abc";
+        PublisherProbe<MovieInfo> movieInfoProbe = PublisherProbe.of(Mono.never());
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), isNull()))
+                .thenReturn(movieInfoProbe.mono());
+        when(reviewsRestClientMock.retrieveRatingSummary(isA(String.class)))
+                .thenReturn(Mono.never());
+        when(reviewsRestClientMock.retrieveFirstReviewPage(isA(String.class)))
+                .thenReturn(Mono.never());
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .header("X-Request-Budget-Ms", "50")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+
+        movieInfoProbe.assertWasCancelled();
+    }
+
+    @Test
+    void retrieveMovieById_slowReviews_partial() {
+
+        var movieId = "abc";
+        PublisherProbe<CursorPage<Review>> reviewsProbe = PublisherProbe.of(Mono.never());
+        when(moviesInfoRestClientMock.retrieveMovieInfo(isA(String.class), isNull()))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 3L)));
+        when(reviewsRestClientMock.retrieveRatingSummary(isA(String.class)))
+                .thenReturn(Mono.never());
+        when(reviewsRestClientMock.lastKnownRatingSummary(isA(String.class)))
+                .thenReturn(Optional.of(new RatingSummary(8.5, 2, Map.of("8", 1L, "9", 1L), 7L)));
+        when(reviewsRestClientMock.retrieveFirstReviewPage(isA(String.class)))
+                .thenReturn(reviewsProbe.mono());
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("ETag")
+                .expectBody()
+                .jsonPath("$.movieInfo.name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.ratingSummary.average").isEqualTo(8.5)
+                .jsonPath("$.reviewList").isEmpty()
+                .jsonPath("$.reviewsStatus").isEqualTo("partial");
+
+        reviewsProbe.assertWasCancelled();
+    }
+
+    @Test
+    void retrieveMovieById_unknownInclude() {
+
+        webTestClient
+                .get()
+                .uri(MOVIES_URL + "/{id}?include=cast", "abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
 }
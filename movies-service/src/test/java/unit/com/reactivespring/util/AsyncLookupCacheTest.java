@@ -0,0 +1,125 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AsyncLookupCacheTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void servesCachedValue() {
+
+        var cache = new AsyncLookupCache<String, String>("test", 100, Duration.ofMinutes(1), Duration.ofMinutes(1),
+                Duration.ofMinutes(1), key -> Mono.fromCallable(() -> Optional.of(key + "-" + loads.incrementAndGet())),
+                meterRegistry);
+
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc-1"))
+                .verifyComplete();
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc-1"))
+                .verifyComplete();
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void servesStaleValueWhileRevalidating() throws InterruptedException {
+
+        var cache = new AsyncLookupCache<String, String>("test", 100, Duration.ofMinutes(1), Duration.ofMillis(20),
+                Duration.ofMinutes(1), key -> Mono.fromCallable(() -> Optional.of(key + "-" + loads.incrementAndGet())),
+                meterRegistry);
+
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc-1"))
+                .verifyComplete();
+
+        Thread.sleep(50);
+
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc-1"))
+                .verifyComplete();
+        StepVerifier.create(Mono.delay(Duration.ofMillis(50)).then(cache.get("abc")))
+                .expectNext(Optional.of("abc-2"))
+                .verifyComplete();
+    }
+
+    @Test
+    void negativeResultExpiresOnItsOwnTtl() throws InterruptedException {
+
+        var cache = new AsyncLookupCache<String, String>("test", 100, Duration.ofMinutes(1), Duration.ofMinutes(1),
+                Duration.ofMillis(20), key -> Mono.fromCallable(() -> loads.incrementAndGet() == 1
+                ? Optional.empty() : Optional.of(key)), meterRegistry);
+
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.empty())
+                .verifyComplete();
+
+        Thread.sleep(50);
+
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc"))
+                .verifyComplete();
+    }
+
+    @Test
+    void errorsAreNotCached() {
+
+        var cache = new AsyncLookupCache<String, String>("test", 100, Duration.ofMinutes(1), Duration.ofMinutes(1),
+                Duration.ofMinutes(1), key -> loads.incrementAndGet() == 1
+                ? Mono.error(new RuntimeException("boom")) : Mono.just(Optional.of(key)), meterRegistry);
+
+        StepVerifier.create(cache.get("abc"))
+                .expectErrorMessage("boom")
+                .verify();
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc"))
+                .verifyComplete();
+    }
+
+    @Test
+    void lastKnownGoodOutlivesTheEntryAndFailedLoads() throws InterruptedException {
+
+        var cache = new AsyncLookupCache<String, String>("test", 100, Duration.ofMillis(20), Duration.ofMinutes(1),
+                Duration.ofMinutes(1), Duration.ofMinutes(1), key -> {
+                    var load = loads.incrementAndGet();
+                    if (load == 2) {
+                        return Mono.error(new RuntimeException("boom"));
+                    }
+                    return Mono.just(load == 1 ? Optional.of(key + "-1") : Optional.empty());
+                }, meterRegistry);
+
+        assertEquals(Optional.empty(), cache.lastKnownGood("abc"));
+        assertEquals(0, loads.get());
+
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.of("abc-1"))
+                .verifyComplete();
+
+        Thread.sleep(50);
+
+        // the entry has expired and its reload fails, the last good value is still there
+        StepVerifier.create(cache.get("abc"))
+                .expectErrorMessage("boom")
+                .verify();
+        assertEquals(Optional.of("abc-1"), cache.lastKnownGood("abc"));
+
+        // a negative result means there is nothing to fall back to any more
+        StepVerifier.create(cache.get("abc"))
+                .expectNext(Optional.empty())
+                .verifyComplete();
+        assertEquals(Optional.empty(), cache.lastKnownGood("abc"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancerTest {
+
+    static final List<String> INSTANCES = List.of("http://a", "http://b");
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicLong clock = new AtomicLong(1);
+
+    LoadBalancer loadBalancer = new LoadBalancer("test", INSTANCES, IllegalStateException.class::isInstance,
+            0.5, 4, Duration.ofSeconds(30), Duration.ofSeconds(10), meterRegistry, clock::get);
+
+    List<String> called = new ArrayList<>();
+
+    Mono<String> call(String baseUrl) {
+        called.add(baseUrl);
+        return Mono.just(baseUrl);
+    }
+
+    Mono<String> failOn(String failing, String baseUrl) {
+        called.add(baseUrl);
+        return baseUrl.equals(failing) ? Mono.error(new IllegalStateException("503")) : Mono.just(baseUrl);
+    }
+
+    @Test
+    void callGoesToTheInstanceWithFewerOutstandingCalls() {
+
+        // whichever instance the first call lands on stays busy, so the rest go to the other one
+        loadBalancer.execute(baseUrl -> {
+            called.add(baseUrl);
+            return Mono.never();
+        }).subscribe();
+        var busy = called.get(0);
+
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(loadBalancer.execute(this::call))
+                    .expectNextMatches(baseUrl -> !baseUrl.equals(busy))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void failingInstanceIsEjectedAndSlowStartedWhenItReturns() {
+
+        for (int i = 0; i < 20; i++) {
+            loadBalancer.execute(baseUrl -> failOn("http://a", baseUrl)).onErrorResume(ex -> Mono.empty()).block();
+        }
+        assertEquals(1.0, meterRegistry.get("movies.loadbalancer.ejections").tag("instance", "http://a").counter().count());
+
+        called.clear();
+        for (int i = 0; i < 20; i++) {
+            loadBalancer.execute(this::call).block();
+        }
+        assertTrue(called.stream().allMatch("http://b"::equals));
+
+        // back after the ejection, but with a tenth of the weight while b has a call outstanding
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        loadBalancer.execute(baseUrl -> Mono.never()).subscribe();
+        called.clear();
+        for (int i = 0; i < 20; i++) {
+            loadBalancer.execute(this::call).block();
+        }
+        assertTrue(called.stream().allMatch("http://b"::equals));
+
+        // once slow start is over it gets its share again
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        called.clear();
+        for (int i = 0; i < 20; i++) {
+            loadBalancer.execute(this::call).block();
+        }
+        assertTrue(called.contains("http://a"));
+    }
+
+    @Test
+    void errorsThatAreNotFailuresDoNotEject() {
+
+        for (int i = 0; i < 20; i++) {
+            loadBalancer.execute(baseUrl -> Mono.error(new IllegalArgumentException("404")))
+                    .onErrorResume(ex -> Mono.empty())
+                    .block();
+        }
+
+        assertEquals(0.0, meterRegistry.get("movies.loadbalancer.ejections").tag("instance", "http://a").counter().count());
+        assertEquals(0.0, meterRegistry.get("movies.loadbalancer.ejections").tag("instance", "http://b").counter().count());
+    }
+
+    @Test
+    void lastInstanceInRotationIsNeverEjected() {
+
+        for (int i = 0; i < 40; i++) {
+            loadBalancer.execute(baseUrl -> Mono.error(new IllegalStateException("503")))
+                    .onErrorResume(ex -> Mono.empty())
+                    .block();
+        }
+
+        var ejections = meterRegistry.get("movies.loadbalancer.ejections").counters().stream()
+                .mapToDouble(counter -> counter.count())
+                .sum();
+        assertEquals(1.0, ejections);
+    }
+}
@@ -0,0 +1,80 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MicroBatcherTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    List<Set<String>> batches = new ArrayList<>();
+
+    MicroBatcher<String, String> batcher(int maxBatchSize) {
+        return new MicroBatcher<>("test", Duration.ofMillis(20), maxBatchSize, keys -> {
+            synchronized (batches) {
+                batches.add(keys);
+            }
+            return Mono.just(keys.stream()
+                    .filter(key -> !key.equals("missing"))
+                    .collect(Collectors.toMap(key -> key, key -> key.toUpperCase())));
+        }, meterRegistry);
+    }
+
+    @Test
+    void keysWithinWindowShareOneBatch() {
+
+        var batcher = batcher(100);
+
+        StepVerifier.create(Flux.merge(batcher.load("a"), batcher.load("b"), batcher.load("a"), batcher.load("missing"))
+                        .collectList())
+                .assertNext(values -> {
+                    assertEquals(4, values.size());
+                    assertEquals(3, values.stream().filter(Optional::isPresent).count());
+                    assertEquals(true, values.contains(Optional.empty()));
+                })
+                .verifyComplete();
+
+        assertEquals(1, batches.size());
+        assertEquals(Set.of("a", "b", "missing"), batches.get(0));
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaiting() {
+
+        var batcher = batcher(2);
+
+        StepVerifier.create(Flux.merge(batcher.load("a"), batcher.load("b"), batcher.load("c")).collectList())
+                .assertNext(values -> assertEquals(3, values.size()))
+                .verifyComplete();
+
+        assertEquals(2, batches.size());
+        assertEquals(Set.of("a", "b"), batches.get(0));
+    }
+
+    @Test
+    void failedBatchFailsEveryCaller() {
+
+        var batcher = new MicroBatcher<String, String>("test", Duration.ofMillis(20), 100,
+                keys -> Mono.<Map<String, String>>error(new RuntimeException("boom")), meterRegistry);
+
+        StepVerifier.create(Flux.merge(
+                                batcher.load("a").onErrorResume(ex -> Mono.just(Optional.of(ex.getMessage()))),
+                                batcher.load("b").onErrorResume(ex -> Mono.just(Optional.of(ex.getMessage()))))
+                        .collectList())
+                .expectNext(List.of(Optional.of("boom"), Optional.of("boom")))
+                .verifyComplete();
+    }
+}
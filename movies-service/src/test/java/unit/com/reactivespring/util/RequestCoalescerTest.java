@@ -0,0 +1,114 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    RequestCoalescer<String, String> coalescer = new RequestCoalescer<>("test", meterRegistry);
+
+    @Test
+    void concurrentCallersShareOneCall() {
+
+        var calls = new AtomicInteger();
+        Sinks.One<String> downstream = Sinks.one();
+
+        var first = coalescer.execute("abc", key -> {
+            calls.incrementAndGet();
+            return downstream.asMono();
+        });
+        var second = coalescer.execute("abc", key -> {
+            calls.incrementAndGet();
+            return downstream.asMono();
+        });
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> downstream.tryEmitValue("movie"))
+                .assertNext(results -> {
+                    assertEquals("movie", results.getT1());
+                    assertEquals("movie", results.getT2());
+                })
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("movies.coalescing.requests").tag("result", "leader").counter().count());
+        assertEquals(1.0, meterRegistry.get("movies.coalescing.requests").tag("result", "joined").counter().count());
+    }
+
+    @Test
+    void completedCallIsNotReused() {
+
+        var calls = new AtomicInteger();
+
+        StepVerifier.create(coalescer.execute("abc", key -> Mono.fromCallable(() -> "call-" + calls.incrementAndGet())))
+                .expectNext("call-1")
+                .verifyComplete();
+
+        StepVerifier.create(coalescer.execute("abc", key -> Mono.fromCallable(() -> "call-" + calls.incrementAndGet())))
+                .expectNext("call-2")
+                .verifyComplete();
+    }
+
+    @Test
+    void errorIsSharedAndThenForgotten() {
+
+        StepVerifier.create(coalescer.execute("abc", key -> Mono.<String>error(new RuntimeException("boom"))))
+                .expectErrorMessage("boom")
+                .verify();
+
+        StepVerifier.create(coalescer.execute("abc", key -> Mono.just("movie")))
+                .expectNext("movie")
+                .verifyComplete();
+    }
+
+    @Test
+    void sharedCallIsCancelledWhenEveryCallerLeaves() {
+
+        PublisherProbe<String> downstream = PublisherProbe.of(Mono.never());
+
+        var first = coalescer.execute("abc", key -> downstream.mono()).subscribe();
+        var second = coalescer.execute("abc", key -> downstream.mono()).subscribe();
+
+        first.dispose();
+        downstream.assertWasNotCancelled();
+        second.dispose();
+        downstream.assertWasCancelled();
+
+        StepVerifier.create(coalescer.execute("abc", key -> Mono.just("movie")))
+                .expectNext("movie")
+                .verifyComplete();
+    }
+
+    @Test
+    void joinerWithMoreTimeRunsTheCallAgainWhenTheLeadersDeadlineRunsOut() {
+
+        var calls = new AtomicInteger();
+        Sinks.One<String> leaderCall = Sinks.one();
+
+        var leader = coalescer.execute("abc", key -> calls.incrementAndGet() == 1 ? leaderCall.asMono() : Mono.just("movie"))
+                .contextWrite(context -> Deadline.put(context, System.nanoTime()))
+                .subscribe(movie -> {}, ex -> {});
+        var joiner = coalescer.execute("abc", key -> calls.incrementAndGet() == 1 ? leaderCall.asMono() : Mono.just("movie"))
+                .contextWrite(context -> Deadline.put(context, System.nanoTime() + Duration.ofSeconds(5).toNanos()));
+
+        StepVerifier.create(joiner)
+                .then(() -> leaderCall.tryEmitError(new DeadlineExceededException("leader out of time")))
+                .expectNext("movie")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        leader.dispose();
+    }
+}
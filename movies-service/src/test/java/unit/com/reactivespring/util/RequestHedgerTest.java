@@ -0,0 +1,101 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestHedgerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicInteger calls = new AtomicInteger();
+
+    RequestHedger hedger(HedgeBudget hedgeBudget) {
+        var hedger = new RequestHedger("test", 0.9, Duration.ofMillis(1), 80, hedgeBudget, meterRegistry);
+        // warm up with 10ms latencies, so calls are hedged after 10ms
+        for (int i = 0; i < 80; i++) {
+            hedger.record(Duration.ofMillis(10).toNanos());
+        }
+        return hedger;
+    }
+
+    @Test
+    void slowCallIsHedgedAndLoserCancelled() {
+
+        var hedger = hedger(new HedgeBudget(0.1, 10, meterRegistry));
+        var slowProbe = PublisherProbe.of(Mono.delay(Duration.ofSeconds(5)).thenReturn("slow"));
+
+        StepVerifier.create(hedger.execute(() -> calls.incrementAndGet() == 1 ? slowProbe.mono() : Mono.just("fast")))
+                .expectNext("fast")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        slowProbe.assertWasCancelled();
+        assertEquals(1.0, meterRegistry.get("movies.hedging.requests").tag("result", "sent").counter().count());
+        assertEquals(1.0, meterRegistry.get("movies.hedging.requests").tag("result", "won").counter().count());
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+
+        var hedger = hedger(new HedgeBudget(0.1, 10, meterRegistry));
+
+        StepVerifier.create(hedger.execute(() -> Mono.fromCallable(() -> "call-" + calls.incrementAndGet())))
+                .expectNext("call-1")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.get("movies.hedging.requests").tag("result", "sent").counter().count());
+    }
+
+    @Test
+    void noHedgeWithoutBudget() {
+
+        var hedger = hedger(new HedgeBudget(0.1, 0, meterRegistry));
+
+        StepVerifier.create(hedger.execute(() -> Mono.delay(Duration.ofMillis(50))
+                        .map(tick -> "call-" + calls.incrementAndGet())))
+                .expectNext("call-1")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("movies.hedging.requests").tag("result", "denied").counter().count());
+    }
+
+    @Test
+    void noHedgeWhileWarmingUp() {
+
+        var hedger = new RequestHedger("test", 0.9, Duration.ofMillis(1), 80,
+                new HedgeBudget(0.1, 10, meterRegistry), meterRegistry);
+
+        StepVerifier.create(hedger.execute(() -> Mono.delay(Duration.ofMillis(50))
+                        .map(tick -> "call-" + calls.incrementAndGet())))
+                .expectNext("call-1")
+                .verifyComplete();
+
+        assertEquals(0L, hedger.hedgeDelayNanos());
+    }
+
+    @Test
+    void cancelledCallStillCountsTowardsTheDelay() {
+
+        var hedger = new RequestHedger("test", 0.9, Duration.ofMillis(1), 8,
+                new HedgeBudget(0.1, 10, meterRegistry), meterRegistry);
+
+        StepVerifier.create(hedger.execute(Mono::never))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .thenCancel()
+                .verify();
+
+        assertTrue(hedger.hedgeDelayNanos() >= Duration.ofMillis(50).toNanos());
+    }
+}